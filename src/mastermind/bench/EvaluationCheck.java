@@ -0,0 +1,124 @@
+package mastermind.bench;
+
+import mastermind.model.ColorCode;
+import mastermind.model.GameSpec;
+import mastermind.model.MastermindGame;
+import mastermind.model.Rating;
+
+/**
+ * Compares {@link ColorCode#evaluateIndex(ColorCode)} and
+ * {@link ColorCode#evaluate(ColorCode)} with the original evaluation, which
+ * counted the colors of both codes in histograms, over all pairs of color
+ * codes. Prints the number of pairs and mismatches per game size and exits
+ * with status 1 if any pair differs.
+ * <p>
+ * Compile and run without an IDE, for example:
+ *
+ * <pre>
+ * javac -d out $(find src -name '*.java')
+ * java -cp out mastermind.bench.EvaluationCheck -specs 6x4,5x5,3x7,8x3
+ * </pre>
+ */
+public final class EvaluationCheck {
+
+    private EvaluationCheck() {
+    }
+
+    /**
+     * Runs the comparison.
+     *
+     * @param args
+     *            option {@code -specs} (comma separated, for example
+     *            {@code 6x4,8x3}) followed by its value
+     */
+    public static void main(String[] args) {
+        String specs = "6x4,5x5,3x7,8x3";
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "-specs":
+                specs = value;
+                break;
+            default:
+                System.err.println("Unknown option " + args[i]);
+                return;
+            }
+        }
+
+        long mismatches = 0;
+        for (String dimensions : specs.split(",")) {
+            String[] colorsAndSlots = dimensions.split("x");
+            GameSpec spec = new GameSpec(Integer.parseInt(colorsAndSlots[0]),
+                    Integer.parseInt(colorsAndSlots[1]),
+                    MastermindGame.MAX_MOVES);
+            mismatches += check(spec);
+        }
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compares all pairs of color codes of a game size.
+     *
+     * @return number of mismatches
+     */
+    private static long check(GameSpec spec) {
+        final int count = spec.getCodeCount();
+        final int slots = spec.getSlots();
+        final ColorCode[] codes = new ColorCode[count];
+        for (int i = 0; i < count; i++) {
+            codes[i] = ColorCode.of(spec, i);
+        }
+        long mismatches = 0;
+        for (ColorCode guess : codes) {
+            for (ColorCode secret : codes) {
+                final int expected = histogramEvaluation(guess, secret);
+                final Rating rating = guess.evaluate(secret);
+                final int packed = guess.evaluateIndex(secret);
+                final int fromRating = rating.getBlack() * (slots + 1)
+                        + rating.getWhite();
+                if (packed != expected || fromRating != expected) {
+                    if (mismatches == 0) {
+                        System.out.println("First mismatch: " + guess
+                                + " against " + secret + " is " + packed
+                                + " and " + rating + ", expected black "
+                                + expected / (slots + 1) + " white "
+                                + expected % (slots + 1));
+                    }
+                    mismatches++;
+                }
+            }
+        }
+        System.out.printf("%dx%d: %d pairs, %d mismatches%n",
+                spec.getColors(), slots, (long) count * count, mismatches);
+        return mismatches;
+    }
+
+    /**
+     * Evaluates as the original {@code ColorCode.evaluate} did: all spikes of
+     * a color that both codes have are black or white, the black ones are
+     * those in the same slot.
+     *
+     * @return packed rating, black * (slots + 1) + white
+     */
+    private static int histogramEvaluation(ColorCode guess,
+            ColorCode secret) {
+        final GameSpec spec = guess.getSpec();
+        final int[] inGuess = new int[spec.getColors()];
+        final int[] inSecret = new int[spec.getColors()];
+        int black = 0;
+        for (int i = 0; i < spec.getSlots(); i++) {
+            inGuess[guess.get(i)]++;
+            inSecret[secret.get(i)]++;
+            if (guess.get(i) == secret.get(i)) {
+                black++;
+            }
+        }
+        int matching = 0;
+        for (int color = 0; color < inGuess.length; color++) {
+            matching += Math.min(inGuess[color], inSecret[color]);
+        }
+        return black * (spec.getSlots() + 1) + matching - black;
+    }
+}
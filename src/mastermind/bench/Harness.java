@@ -0,0 +1,118 @@
+package mastermind.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.function.LongSupplier;
+
+/**
+ * A minimal benchmark harness that only needs the JDK. Every benchmark is
+ * warmed up and then measured in several timed iterations on the calling
+ * thread. Besides the time per operation it reports the bytes allocated per
+ * operation, if the JVM supports measuring them.
+ */
+final class Harness {
+
+    private final long warmupNanos;
+    private final long iterationNanos;
+    private final int iterations;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Accumulates results so the JIT cannot eliminate the benchmarked code.
+     */
+    private long sink;
+
+    /**
+     * Constructs a harness.
+     *
+     * @param warmupMillis
+     *            time to run a benchmark before measuring
+     * @param iterationMillis
+     *            duration of one measured iteration
+     * @param iterations
+     *            number of measured iterations
+     */
+    Harness(long warmupMillis, long iterationMillis, int iterations) {
+        this.warmupNanos = warmupMillis * 1000000;
+        this.iterationNanos = iterationMillis * 1000000;
+        this.iterations = iterations;
+    }
+
+    /**
+     * Prints the header of the result table.
+     */
+    void printHeader() {
+        System.out.printf("%-40s %14s %10s %14s%n", "Benchmark", "ns/op",
+                "+-", "B/op");
+    }
+
+    /**
+     * Measures a benchmark and prints one line of the result table.
+     *
+     * @param name
+     *            name of the benchmark
+     * @param operation
+     *            one operation, returning a value that depends on its work
+     */
+    void run(String name, LongSupplier operation) {
+        runFor(operation, warmupNanos);
+
+        double[] nanosPerOp = new double[iterations];
+        long ops = 0;
+        long bytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            long count = runFor(operation, iterationNanos);
+            long elapsed = System.nanoTime() - start;
+            bytes += allocatedBytes() - allocatedBefore;
+            ops += count;
+            nanosPerOp[i] = (double) elapsed / count;
+        }
+
+        double mean = 0;
+        for (double value : nanosPerOp) {
+            mean += value / iterations;
+        }
+        double variance = 0;
+        for (double value : nanosPerOp) {
+            variance += (value - mean) * (value - mean) / iterations;
+        }
+        String allocation = allocatedBytes() < 0 ? "n/a"
+                : String.format("%.1f", (double) bytes / ops);
+        System.out.printf("%-40s %14.1f %10.1f %14s%n", name, mean,
+                Math.sqrt(variance), allocation);
+    }
+
+    /**
+     * Returns the accumulated results, so they are observably used.
+     *
+     * @return sink value
+     */
+    long getSink() {
+        return sink;
+    }
+
+    private long runFor(LongSupplier operation, long nanos) {
+        long count = 0;
+        long deadline = System.nanoTime() + nanos;
+        do {
+            sink += operation.getAsLong();
+            count++;
+        } while (System.nanoTime() < deadline);
+        return count;
+    }
+
+    private long allocatedBytes() {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean =
+                    (com.sun.management.ThreadMXBean) threads;
+            if (bean.isThreadAllocatedMemorySupported()
+                    && bean.isThreadAllocatedMemoryEnabled()) {
+                return bean.getThreadAllocatedBytes(
+                        Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,171 @@
+package mastermind.bench;
+
+import java.util.Random;
+
+import mastermind.model.CandidateSet;
+import mastermind.model.ColorCode;
+import mastermind.model.Game;
+import mastermind.model.GameSpec;
+import mastermind.model.MastermindGame;
+import mastermind.model.Rating;
+import mastermind.model.StrategyType;
+
+/**
+ * Benchmarks of the hot paths of the model: rating two color codes (as a
+ * shared {@code Rating} and as a packed number), rating one color code against
+ * all, turning an index into a color code, filtering all candidates by a
+ * rating, filtering a bitset and a dense list of candidates again and
+ * computing the first machine move with every strategy. Each benchmark runs
+ * for every requested game size.
+ * <p>
+ * Compile and run without an IDE, for example:
+ *
+ * <pre>
+ * javac -d out $(find src -name '*.java')
+ * java -cp out mastermind.bench.ModelBenchmarks -specs 6x4,8x5
+ * </pre>
+ */
+public final class ModelBenchmarks {
+
+    private static final int SAMPLES = 1024;
+
+    private final GameSpec spec;
+    private final Harness harness;
+    private final ColorCode[] codes = new ColorCode[SAMPLES];
+    private int next;
+
+    private ModelBenchmarks(GameSpec spec, Harness harness) {
+        this.spec = spec;
+        this.harness = harness;
+        Random random = new Random(spec.getCodeCount());
+        for (int i = 0; i < SAMPLES; i++) {
+            codes[i] = ColorCode.of(spec, random.nextInt(spec.getCodeCount()));
+        }
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args
+     *            options {@code -specs} (comma separated, for example
+     *            {@code 6x4,8x5,10x6}), {@code -strategies} (comma separated
+     *            names), {@code -warmup} and {@code -time} (milliseconds) and
+     *            {@code -iterations}, each followed by its value
+     */
+    public static void main(String[] args) {
+        String specs = "6x4,8x5,10x6";
+        String strategies = null;
+        long warmup = 1000;
+        long time = 1000;
+        int iterations = 5;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "-specs":
+                specs = value;
+                break;
+            case "-strategies":
+                strategies = value;
+                break;
+            case "-warmup":
+                warmup = Long.parseLong(value);
+                break;
+            case "-time":
+                time = Long.parseLong(value);
+                break;
+            case "-iterations":
+                iterations = Integer.parseInt(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option "
+                        + args[i]);
+            }
+        }
+
+        Harness harness = new Harness(warmup, time, iterations);
+        harness.printHeader();
+        for (String dimensions : specs.split(",")) {
+            String[] colorsAndSlots = dimensions.split("x");
+            GameSpec spec = new GameSpec(Integer.parseInt(colorsAndSlots[0]),
+                    Integer.parseInt(colorsAndSlots[1]),
+                    MastermindGame.MAX_MOVES);
+            new ModelBenchmarks(spec, harness).runAll(strategies);
+        }
+        // Keep the results alive
+        if (harness.getSink() == 42) {
+            System.out.println();
+        }
+    }
+
+    private void runAll(String strategies) {
+        String prefix = spec.getColors() + "x" + spec.getSlots() + " ";
+        Game.preloadTables(spec);
+
+        harness.run(prefix + "evaluate", () -> {
+            Rating rating = nextCode().evaluate(nextCode());
+            return rating.getBlack() * Byte.SIZE + rating.getWhite();
+        });
+
+        harness.run(prefix + "evaluateIndex", () -> {
+            return nextCode().evaluateIndex(nextCode());
+        });
+
+        final int[] all = new int[spec.getCodeCount()];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+        }
+        final byte[] ratings = new byte[all.length];
+        harness.run(prefix + "evaluateAll (all codes)", () -> {
+            nextCode().evaluateAll(all, ratings);
+            return ratings[next];
+        });
+
+        harness.run(prefix + "ColorCode.of", () -> {
+            next = (next + 1) % spec.getCodeCount();
+            return ColorCode.of(spec, next).get(0);
+        });
+
+        harness.run(prefix + "processEval (all candidates)", () -> {
+            Game game = new Game(spec, true,
+                    StrategyType.FIRST_CONSISTENT.create());
+            ColorCode guess = game.machineMove();
+            game.processEval(guess, nextCode().evaluate(guess));
+            return game.getCandidateCount();
+        });
+
+        // After the first filter all candidates give the same rating, so
+        // filtering again rates them all and keeps them
+        final int guess = 0;
+        final int packedRating =
+                ColorCode.of(spec, guess).evaluateIndex(codes[1]);
+        final CandidateSet bitset = CandidateSet.all(spec);
+        bitset.retain(guess, packedRating);
+        harness.run(prefix + "retain (bitset)", () -> {
+            bitset.retain(guess, packedRating);
+            return bitset.first();
+        });
+
+        final CandidateSet survivors = CandidateSet.copyOf(bitset);
+        harness.run(prefix + "retain (survivors)", () -> {
+            survivors.retain(guess, packedRating);
+            return survivors.first();
+        });
+
+        for (StrategyType type : StrategyType.values()) {
+            String name = type.create().getName();
+            if (strategies != null
+                    && !("," + strategies + ",").contains("," + name + ",")) {
+                continue;
+            }
+            harness.run(prefix + "machineMove (first) " + name, () -> {
+                Game game = new Game(spec, true, type.create());
+                return game.machineMove().get(0);
+            });
+        }
+    }
+
+    private ColorCode nextCode() {
+        next = (next + 1) % SAMPLES;
+        return codes[next];
+    }
+}
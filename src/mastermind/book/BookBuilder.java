@@ -0,0 +1,108 @@
+package mastermind.book;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import mastermind.model.GameSpec;
+import mastermind.model.MastermindGame;
+import mastermind.model.GuessStrategy;
+import mastermind.model.OpeningBook;
+import mastermind.model.OptimalSolver;
+import mastermind.model.StrategyType;
+
+/**
+ * Computes the opening book of a strategy offline. Games, the simulator and
+ * the user interfaces can then map the file instead of searching, for
+ * example:
+ *
+ * <pre>
+ * java -cp out mastermind.book.BookBuilder -strategy knuth -out knuth.book
+ * java -cp out mastermind.sim.Simulator -strategy knuth -book knuth.book
+ * </pre>
+ *
+ * The strategy {@value OptimalSolver#NAME} searches the strategy with the
+ * least expected number of moves, within {@code -moves} moves if given, and
+ * prints its progress.
+ */
+public final class BookBuilder {
+
+    private BookBuilder() {
+    }
+
+    /**
+     * Writes the book and prints its size.
+     *
+     * @param args
+     *            options {@code -colors}, {@code -slots}, {@code -strategy},
+     *            {@code -depth} (maximum number of moves in the book),
+     *            {@code -moves} (maximum number of moves of the optimal
+     *            strategy) and {@code -out} (file to write), each followed by
+     *            its value
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        int colors = MastermindGame.NUMBER_COLORS;
+        int slots = MastermindGame.NUMBER_SLOTS;
+        String strategyName = "knuth";
+        int depth = Integer.MAX_VALUE;
+        int maxMoves = Byte.MAX_VALUE;
+        String out = null;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "-colors":
+                colors = Integer.parseInt(value);
+                break;
+            case "-slots":
+                slots = Integer.parseInt(value);
+                break;
+            case "-strategy":
+                strategyName = value;
+                break;
+            case "-depth":
+                depth = Integer.parseInt(value);
+                break;
+            case "-moves":
+                maxMoves = Integer.parseInt(value);
+                break;
+            case "-out":
+                out = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option "
+                        + args[i]);
+            }
+        }
+
+        GameSpec spec = new GameSpec(colors, slots, maxMoves);
+        long start = System.nanoTime();
+        GuessStrategy strategy;
+        if (OptimalSolver.NAME.equalsIgnoreCase(strategyName)) {
+            OptimalSolver.Solution solution = new OptimalSolver(spec,
+                    System.out::println).solve();
+            if (solution == null) {
+                System.out.println("No strategy finds every secret within "
+                        + maxMoves + " moves.");
+                return;
+            }
+            System.out.println("Optimal strategy: " + solution);
+            strategy = solution;
+        } else if (StrategyType.byName(strategyName) != null) {
+            strategy = StrategyType.byName(strategyName).create();
+        } else {
+            throw new IllegalArgumentException("Unknown strategy "
+                    + strategyName);
+        }
+        Path file = Paths.get(out == null
+                ? strategyName + "-" + colors + "x" + slots + ".book" : out);
+
+        OpeningBook.write(spec, strategy, depth, file);
+        OpeningBook book = OpeningBook.open(file);
+        System.out.printf("%s%nWritten to %s in %.3f s (%d bytes)%n", book,
+                file, (System.nanoTime() - start) / 1e9,
+                file.toFile().length());
+    }
+}
@@ -1,26 +1,136 @@
 package mastermind.gui;
 
 import java.awt.event.ActionListener;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import mastermind.gui.view.Board;
 import mastermind.model.ColorCode;
 import mastermind.model.Game;
-import mastermind.model.MastermindGame;
+import mastermind.model.GuessCache;
 import mastermind.model.Rating;
+import mastermind.model.StrategyType;
 
 /**
- * Is the interface between model and View.
+ * Is the interface between model and View. The machine guesser thinks on a
+ * background thread, so the view stays responsive; its results are handed
+ * back to the view on the thread of the user interface. While the human rates
+ * a machine move, the next move is computed for every possible rating.
  */
 public final class Controller {
 
+    /**
+     * Interval in which the thinking indicator is updated.
+     */
+    private static final long TICK_MILLIS = 250;
+
+    /**
+     * The computation of one machine move, from processing the rating of the
+     * previous move to displaying the next one.
+     */
+    private final class MachineTurn {
+
+        private final Game turnGame;
+        private final Rating rating;
+        private final long start = System.nanoTime();
+        private Future<?> computation;
+        private Future<?> ticker;
+
+        private MachineTurn(Game turnGame, Rating rating) {
+            this.turnGame = turnGame;
+            this.rating = rating;
+        }
+
+        private void start() {
+            computation = worker.submit(this::compute);
+            ticker = scheduler.scheduleAtFixedRate(
+                    () -> uiThread.execute(this::tick), TICK_MILLIS,
+                    TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        private void cancel() {
+            computation.cancel(true);
+            ticker.cancel(false);
+        }
+
+        /**
+         * Runs on the worker thread and only touches {@code turnGame}.
+         */
+        private void compute() {
+            int moveNo = turnGame.getMoveCount();
+            try {
+                if (rating != null) {
+                    turnGame.processEval(turnGame.getGameState(moveNo - 1),
+                            rating);
+                    if (rating.isAllBlack()) {
+                        uiThread.execute(() -> finish(moveNo, null, null));
+                        return;
+                    }
+                }
+                ColorCode move = turnGame.machineMove();
+                if (move != null) {
+                    // Think ahead while the human is rating
+                    turnGame.speculate(speculator);
+                }
+                uiThread.execute(() -> finish(moveNo, move, null));
+            } catch (CancellationException ex) {
+                return; // New game was started
+            } catch (RuntimeException ex) {
+                uiThread.execute(() -> finish(moveNo, null, ex));
+            }
+        }
+
+        private void tick() {
+            if (machineTurn == this) {
+                long tenths = (System.nanoTime() - start) / 100000000;
+                String dots = "...".substring(0, (int) (tenths / 3 % 3) + 1);
+                message(String.format("I'm thinking%-3s %d.%d s", dots,
+                        tenths / 10, tenths % 10));
+            }
+        }
+
+        private void finish(int moveNo, ColorCode move, RuntimeException ex) {
+            if (machineTurn != this) {
+                return; // Result of an abandoned game
+            }
+            ticker.cancel(false);
+            machineTurn = null;
+            if (ex != null) {
+                message("Something went wrong: " + ex.getMessage());
+                gameIsOver = true;
+            } else if (rating != null && rating.isAllBlack()) {
+                message("Wow! I did it!");
+                gameIsOver = true;
+            } else {
+                showMachineMove(moveNo, move);
+            }
+        }
+    }
+
     private final Board board;
-    private MastermindGame game;
+    private Game game;
     private boolean gameIsOver;
     private final Consumer<String> messagePrinter;
     private final ActionListener moveListener;
     private final ActionListener newGameListener;
     private final ActionListener switchListener;
+    private final Consumer<StrategyType> strategySelector;
+    private StrategyType strategy = StrategyType.FIRST_CONSISTENT;
+    private final Executor uiThread;
+    private final ExecutorService worker =
+            Executors.newSingleThreadExecutor(Controller::newDaemonThread);
+    private final ScheduledExecutorService scheduler = Executors
+            .newSingleThreadScheduledExecutor(Controller::newDaemonThread);
+    private final ExecutorService speculator = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            Controller::newDaemonThread);
+    private MachineTurn machineTurn;
 
     /**
      * Constructs itself, a game and the action listener.
@@ -29,26 +139,37 @@ public final class Controller {
      *            the view of the game
      * @param messagePrinter
      *            a function, that gives the user hints.
+     * @param uiThread
+     *            executes tasks on the thread of the user interface, from
+     *            which all listeners are called
      */
-    Controller(Board board, Consumer<String> messagePrinter) {
+    Controller(Board board, Consumer<String> messagePrinter,
+            Executor uiThread) {
         this.board = board;
         this.messagePrinter = messagePrinter;
+        this.uiThread = uiThread;
 
         newGame(false); // Human is guessing
         newGameListener = e -> newGame(game.isMachineGuessing());
         switchListener = e -> newGame(!game.isMachineGuessing());
+        strategySelector = type -> {
+            strategy = type;
+            newGame(game.isMachineGuessing());
+        };
         moveListener = e -> {
 
             if (gameIsOver) {
                 message("You have to start a new game.");
+            } else if (machineTurn != null) {
+                message("Please wait, I'm still thinking.");
             } else if (game.isMachineGuessing()) {
                 board.disableSlots();
+                Rating rating = null;
                 if (game.getMoveCount() != 0) {
-                    processRatingFromHuman();
-                }
-                if (!gameIsOver) {
-                    doMachineMove();
+                    rating = board.getRating(game.getMoveCount() - 1);
                 }
+                machineTurn = new MachineTurn(game, rating);
+                machineTurn.start();
             } else {
                 if (!board.isSetColorcode(game.getMoveCount())) {
                     message("Please guess a ColorCode first!");
@@ -86,19 +207,35 @@ public final class Controller {
         return switchListener;
     }
 
-    private void doMachineMove() {
-        int moveNo = game.getMoveCount();
-        ColorCode machineMove = game.machineMove();
+    /**
+     * Returns a function that selects the strategy of the machine guesser and
+     * restarts the game.
+     *
+     * @return selector
+     */
+    Consumer<StrategyType> getStrategySelector() {
+        return strategySelector;
+    }
 
+    private static Thread newDaemonThread(Runnable runnable) {
+        Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private void showMachineMove(int moveNo, ColorCode machineMove) {
         if (machineMove == null) {
             message("You have been cheating!");
-        } else if (moveNo == MastermindGame.MAX_MOVES) {
+            gameIsOver = true;
+        } else if (moveNo == game.getSpec().getMaxMoves()) {
             message("I couldn't find solution.");
+            gameIsOver = true;
         } else {
             // Give the computer another try
             board.setColorCode(moveNo, machineMove);
             board.enableRating(moveNo);
-            message("Please rate my move.");
+            message(String.format("Please rate my move. (%s: %.1f ms)",
+                    strategy, game.getLastComputeNanos() / 1e6));
         }
     }
 
@@ -119,7 +256,7 @@ public final class Controller {
             message("Congratulations! You needed " + moveNo
                     + " move" + (moveNo == 1 ? "" : "s") + ".");
             gameIsOver = true;
-        } else if (moveNo == MastermindGame.MAX_MOVES) {
+        } else if (moveNo == game.getSpec().getMaxMoves()) {
             board.setSecret(game.getSecret());
             message("No more moves! See solution below!");
             gameIsOver = true;
@@ -135,7 +272,16 @@ public final class Controller {
     }
 
     private void newGame(boolean machineIsGuessing) {
-        game = new Game(machineIsGuessing);
+        if (machineTurn != null) {
+            machineTurn.cancel();
+            machineTurn = null;
+        }
+        if (game != null) {
+            // The worker owns the game until its current task is done
+            worker.execute(game::dispose);
+        }
+        game = new Game(board.getSpec(), machineIsGuessing,
+                GuessCache.getShared().wrap(strategy.create()));
         board.disableSlots();
         board.resetSlots();
 
@@ -148,14 +294,4 @@ public final class Controller {
         }
         gameIsOver = false;
     }
-
-    private void processRatingFromHuman() {
-        Rating rating = board.getRating(game.getMoveCount() - 1);
-        game.processEval(game.getGameState(game.getMoveCount() - 1),
-                rating);
-        if (rating.isAllBlack()) {
-            message("Wow! I did it!");
-            gameIsOver = true;
-        }
-    }
 }
\ No newline at end of file
@@ -4,11 +4,16 @@ import java.awt.Color;
 
 import javax.swing.GroupLayout;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 import mastermind.gui.view.Board;
+import mastermind.model.GameSpec;
+import mastermind.model.MastermindGame;
+import mastermind.model.StrategyType;
 
 /**
  * A GUI for the Mastermind game implemented in "Aufgabe 1". It uses an
@@ -31,18 +36,29 @@ public final class MainPanel extends JPanel {
     private final JButton moveButton = new JButton("Move");
     private final JButton newButton = new JButton("New");
     private final JButton swichButton = new JButton("Switch");
+    private final JComboBox<StrategyType> strategyBox =
+            new JComboBox<>(StrategyType.values());
 
     /**
      * Delegates the construction of the application.
      *
      * @param args
-     *            not used
+     *            optional number of colors, slots and moves, for example
+     *            {@code 8 5 10} for Super Mastermind
      */
     public static void main(String[] args) {
-
-        javax.swing.SwingUtilities.invokeLater(() -> {
+        GameSpec spec = GameSpec.DEFAULT;
+        if (args.length >= 2) {
+            int maxMoves = args.length > 2 ? Integer.parseInt(args[2])
+                    : MastermindGame.MAX_MOVES;
+            spec = new GameSpec(Integer.parseInt(args[0]),
+                    Integer.parseInt(args[1]), maxMoves);
+        }
+        final GameSpec gameSpec = spec;
+
+        SwingUtilities.invokeLater(() -> {
             JFrame frame = new JFrame("Mastermind");
-            MainPanel mainPanel = new MainPanel();
+            MainPanel mainPanel = new MainPanel(gameSpec);
             frame.setContentPane(mainPanel);
             frame.pack();
             frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -51,18 +67,21 @@ public final class MainPanel extends JPanel {
         });
     }
 
-    private MainPanel() {
+    private MainPanel(GameSpec spec) {
 
         // View on the model
-        board = new Board();
+        board = new Board(spec);
 
         // Controller (creates model internally)
         Controller controller = new Controller(board,
-                message -> instruction.setText(message));
+                message -> instruction.setText(message),
+                SwingUtilities::invokeLater);
 
         newButton.addActionListener(controller.getNewGameListener());
         moveButton.addActionListener(controller.getMoveListener());
         swichButton.addActionListener(controller.getSwitchListener());
+        strategyBox.addActionListener(e -> controller.getStrategySelector()
+                .accept((StrategyType) strategyBox.getSelectedItem()));
 
         setBackground(BG_COLOR);
         addLayoutedContent();
@@ -82,7 +101,8 @@ public final class MainPanel extends JPanel {
                 .addGroup(
                         l.createSequentialGroup().addComponent(newButton)
                         .addComponent(moveButton)
-                        .addComponent(swichButton)));
+                        .addComponent(swichButton)
+                        .addComponent(strategyBox)));
 
         l.setVerticalGroup(l
                 .createSequentialGroup()
@@ -92,6 +112,7 @@ public final class MainPanel extends JPanel {
                         l.createParallelGroup(GroupLayout.Alignment.BASELINE)
                         .addComponent(newButton)
                         .addComponent(moveButton)
-                        .addComponent(swichButton)));
+                        .addComponent(swichButton)
+                        .addComponent(strategyBox)));
     }
 }
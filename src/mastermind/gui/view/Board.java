@@ -8,7 +8,7 @@ import javax.swing.JPanel;
 import javax.swing.JSeparator;
 
 import mastermind.model.ColorCode;
-import mastermind.model.MastermindGame;
+import mastermind.model.GameSpec;
 import mastermind.model.Rating;
 
 /**
@@ -29,41 +29,53 @@ public final class Board extends JPanel {
 
     private static final long serialVersionUID = 1L;
 
-    private final ColorCodePanel[] colorCodes =
-            new ColorCodePanel[MastermindGame.MAX_MOVES];
-    private final RatingPanel[] ratings =
-            new RatingPanel[MastermindGame.MAX_MOVES];
+    private final GameSpec spec;
+    private final ColorCodePanel[] colorCodes;
+    private final RatingPanel[] ratings;
 
     private final ColorCodePanel secret;
 
     /**
-     * Constructs a game board with {@value MastermindGame.MAX_MOVES} rows plus
-     * a field for the secret code.
+     * Constructs a game board for the default game.
      */
     public Board() {
+        this(GameSpec.DEFAULT);
+    }
+
+    /**
+     * Constructs a game board with one row per move plus a field for the
+     * secret code.
+     *
+     * @param spec
+     *            dimensions of the game
+     */
+    public Board(GameSpec spec) {
         super(new GridBagLayout());
         setOpaque(false);
+        this.spec = spec;
+        colorCodes = new ColorCodePanel[spec.getMaxMoves()];
+        ratings = new RatingPanel[spec.getMaxMoves()];
 
         // There only exist two instances of MousListener for a board
         SlotListener ratingSlotListener =
                 new SlotListener(new RatingPanel.RatingPopup());
         SlotListener colorSlotListener =
-                new SlotListener(new ColorCodePanel.ColorPopup());
+                new SlotListener(new ColorCodePanel.ColorPopup(spec));
 
         GridBagConstraints c = new GridBagConstraints();
         c.insets = new Insets(MARGIN, MARGIN, MARGIN, MARGIN);
 
-        for (c.gridy = 0; c.gridy < MastermindGame.MAX_MOVES; c.gridy++) {
+        for (c.gridy = 0; c.gridy < spec.getMaxMoves(); c.gridy++) {
 
             // Add ColorCodePanel
             c.gridx = 0;
             colorCodes[c.gridy] =
-                    new ColorCodePanel(colorSlotListener);
+                    new ColorCodePanel(spec, colorSlotListener);
             add(colorCodes[c.gridy], c);
 
             // Add RatingPanel
             c.gridx++;
-            ratings[c.gridy] = new RatingPanel(ratingSlotListener);
+            ratings[c.gridy] = new RatingPanel(spec, ratingSlotListener);
             add(ratings[c.gridy], c);
         }
 
@@ -78,11 +90,20 @@ public final class Board extends JPanel {
         // Add secret panel
         c.weightx = 1;
         c.gridy++;
-        secret = new ColorCodePanel(colorSlotListener);
+        secret = new ColorCodePanel(spec, colorSlotListener);
         add(secret, c);
 
     }
 
+    /**
+     * Returns the dimensions of the game this board displays.
+     *
+     * @return spec of the game
+     */
+    public GameSpec getSpec() {
+        return spec;
+    }
+
     /**
      * Disables all slots so that their value can't be changed by the user.
      */
@@ -211,9 +232,9 @@ public final class Board extends JPanel {
     }
 
     private void checkMoveCount(int moveCount) {
-        if (moveCount < 0 || moveCount >= MastermindGame.MAX_MOVES) {
+        if (moveCount < 0 || moveCount >= spec.getMaxMoves()) {
             throw new IllegalArgumentException("moveCount must be from 0 to "
-                    + MastermindGame.MAX_MOVES + ". Is " + moveCount);
+                    + spec.getMaxMoves() + ". Is " + moveCount);
         }
     }
 }
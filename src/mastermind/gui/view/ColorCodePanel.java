@@ -12,7 +12,7 @@ import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
 
 import mastermind.model.ColorCode;
-import mastermind.model.MastermindGame;
+import mastermind.model.GameSpec;
 
 /**
  * This class is the representation of a color code in the GUI.
@@ -30,9 +30,13 @@ final class ColorCodePanel extends JPanel {
         /**
          * Constructs a popup (since one object is sufficient, this constructor
          * must only be called once.
+         *
+         * @param spec
+         *            dimensions of the game
          */
-        ColorPopup() {
-            for (int i = 0; i < MastermindGame.NUMBER_COLORS; i++) {
+        ColorPopup(GameSpec spec) {
+            Color[] colors = ColorSlot.assignColors(spec.getColors());
+            for (int i = 0; i < colors.length; i++) {
                 JMenuItem item = new JMenuItem();
 
                 final int value = i;
@@ -43,7 +47,7 @@ final class ColorCodePanel extends JPanel {
                     slot.setValue(value);
                 });
 
-                item.setBackground(ColorSlot.AVAILIBLE_COLORS[i]);
+                item.setBackground(colors[i]);
                 add(item);
             }
         }
@@ -54,37 +58,49 @@ final class ColorCodePanel extends JPanel {
      */
     private static final class ColorSlot extends Slot {
 
-        private static final Color[] AVAILIBLE_COLORS = assignColors();
         private static final int EMPTY = -1;
         private static final long serialVersionUID = 1L;
 
+        private final Color[] availibleColors;
         private int value = EMPTY;
 
         /**
-         * Assigns Colors. Place for a possible color-scheme-algorithm.
+         * Assigns Colors. The six classic colors come first, further ones are
+         * spread evenly over the hues.
          *
+         * @param number
+         *            number of colors needed
          * @return possible colors
          */
-        private static Color[] assignColors() {
-            Color[] colors = new Color[] {
+        private static Color[] assignColors(int number) {
+            Color[] classic = new Color[] {
                     Color.BLUE,
                     Color.YELLOW,
                     new Color(205, 20, 20), // red
                     Color.green.darker(),
                     new Color(255, 150, 30), // orange
                     Color.magenta.darker(), };
-            if (colors.length < MastermindGame.NUMBER_COLORS) {
-                throw new RuntimeException("Not enough colors defined");
+            Color[] colors = new Color[number];
+            for (int i = 0; i < number; i++) {
+                if (i < classic.length) {
+                    colors[i] = classic[i];
+                } else {
+                    float hue = (float) (i - classic.length)
+                            / (number - classic.length);
+                    colors[i] = Color.getHSBColor(hue, 0.5f, 0.7f);
+                }
             }
             return colors;
         }
 
-        private ColorSlot(int diameter) {
+        private ColorSlot(int diameter, Color[] availibleColors) {
+            this.availibleColors = availibleColors;
             setPreferredSize(new Dimension(diameter, diameter));
         }
 
-        private ColorSlot(int diameter, MouseListener listener) {
-            this(diameter);
+        private ColorSlot(int diameter, Color[] availibleColors,
+                MouseListener listener) {
+            this(diameter, availibleColors);
             addMouseListener(listener);
         }
 
@@ -94,7 +110,7 @@ final class ColorCodePanel extends JPanel {
         @Override
         Color getColor() {
             return value == EMPTY ? Slot.EMPTY_COLOR
-                    : AVAILIBLE_COLORS[value];
+                    : availibleColors[value];
         }
 
         private void setValue(int value) {
@@ -107,25 +123,30 @@ final class ColorCodePanel extends JPanel {
 
     private static final long serialVersionUID = 1L;
 
-    private final ColorSlot[] slots =
-            new ColorSlot[MastermindGame.NUMBER_SLOTS];
+    private final GameSpec spec;
+    private final ColorSlot[] slots;
 
     /**
      * Constructs an object containing slots.
      *
+     * @param spec
+     *            dimensions of the game
      * @param listener
      *            a global listener for all color slots
      */
-    ColorCodePanel(MouseListener listener) {
+    ColorCodePanel(GameSpec spec, MouseListener listener) {
         super(new GridBagLayout());
         setOpaque(false);
+        this.spec = spec;
+        slots = new ColorSlot[spec.getSlots()];
+        Color[] colors = ColorSlot.assignColors(spec.getColors());
 
-        for (int column = 0; column < MastermindGame.NUMBER_SLOTS; column++) {
+        for (int column = 0; column < slots.length; column++) {
             GridBagConstraints c = new GridBagConstraints();
             c.gridx = column;
             c.insets = new Insets(MARGIN, MARGIN, MARGIN, MARGIN);
             ColorSlot slot =
-                    new ColorSlot(Board.SIZE_COLOR_SLOT, listener);
+                    new ColorSlot(Board.SIZE_COLOR_SLOT, colors, listener);
             slots[column] = slot;
             add(slot, c);
         }
@@ -138,11 +159,11 @@ final class ColorCodePanel extends JPanel {
      * @return current color code
      */
     ColorCode getColorCode() {
-        ColorCode colorCode = new ColorCode();
+        byte[] spikes = new byte[slots.length];
         for (int i = 0; i < slots.length; i++) {
-            colorCode.set(i, (byte) slots[i].value);
+            spikes[i] = (byte) slots[i].value;
         }
-        return colorCode;
+        return ColorCode.of(spec, spikes);
     }
 
     /**
@@ -11,7 +11,7 @@ import javax.swing.JMenuItem;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
 
-import mastermind.model.MastermindGame;
+import mastermind.model.GameSpec;
 import mastermind.model.Rating;
 
 /**
@@ -102,22 +102,26 @@ class RatingPanel extends JPanel {
 
     private static final long serialVersionUID = 1L;
 
-    private final RatingSlot[] slots =
-            new RatingSlot[MastermindGame.NUMBER_SLOTS];
+    private final GameSpec spec;
+    private final RatingSlot[] slots;
 
     /**
      * Constructs an object containing slots.
      *
+     * @param spec
+     *            dimensions of the game
      * @param listener
      *            a global listener for all rating slots
      */
-    RatingPanel(MouseListener listener) {
+    RatingPanel(GameSpec spec, MouseListener listener) {
         setOpaque(false);
+        this.spec = spec;
+        slots = new RatingSlot[spec.getSlots()];
 
         GridBagLayout l = new GridBagLayout();
         setLayout(l);
 
-        for (int i = 0; i < MastermindGame.NUMBER_SLOTS; i++) {
+        for (int i = 0; i < slots.length; i++) {
 
             GridBagConstraints c = new GridBagConstraints();
             c.gridx = i / NO_ROWS;
@@ -148,7 +152,7 @@ class RatingPanel extends JPanel {
                 white++;
             }
         }
-        return new Rating(black, white);
+        return Rating.valueOf(spec, black, white);
     }
 
     /**
@@ -0,0 +1,82 @@
+package mastermind.model;
+
+/**
+ * A set of color codes, identified by their index, that can still match the
+ * secret.
+ */
+public interface CandidateSet {
+
+    /**
+     * Returns the dimensions of the game the color codes belong to.
+     *
+     * @return spec of the game
+     */
+    GameSpec getSpec();
+
+    /**
+     * Counts the color codes that are still possible.
+     *
+     * @return number of possible color codes
+     */
+    int count();
+
+    /**
+     * Checks whether a color code is still possible.
+     *
+     * @param code
+     *            index representing color code
+     * @return true if the color code is possible, otherwise false
+     */
+    boolean contains(int code);
+
+    /**
+     * Returns the possible color code with the lowest index.
+     *
+     * @return index of the first possible color code or -1 if there is none
+     */
+    int first();
+
+    /**
+     * Removes every color code that would not have given the specified rating
+     * to {@code guess}.
+     *
+     * @param guess
+     *            index of the rated color code
+     * @param packedRating
+     *            rating as packed by {@code GameSpec.pack}
+     */
+    void retain(int guess, int packedRating);
+
+    /**
+     * Copies the indices of all possible color codes in ascending order.
+     *
+     * @param dest
+     *            array with room for at least {@link #count()} indices
+     * @return number of copied indices
+     */
+    int copyTo(int[] dest);
+
+    /**
+     * Returns a set of all color codes of a game, kept as a bitset on the
+     * heap.
+     *
+     * @param spec
+     *            dimensions of the game
+     * @return set where every color code is possible
+     */
+    static CandidateSet all(GameSpec spec) {
+        return new PossibilityList(spec);
+    }
+
+    /**
+     * Returns a dense copy of a set, which filters faster than a bitset once
+     * few of the color codes are left.
+     *
+     * @param other
+     *            set to copy
+     * @return list of the same color codes
+     */
+    static CandidateSet copyOf(CandidateSet other) {
+        return new SurvivorList(other);
+    }
+}
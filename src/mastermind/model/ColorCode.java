@@ -1,105 +1,263 @@
 package mastermind.model;
 
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Implementation of one combination of colored spikes in the Mastermind Game.
+ * Immutable; two color codes of the same code space and index are equal.
+ * Color codes are handed out by {@link #of(GameSpec, int)}: for code spaces
+ * of at most {@value #MAX_TABLE_CODE_COUNT} codes every index has one shared
+ * instance, created when it is needed for the first time, so color codes cost
+ * nothing to hand out and can be shared by threads and games.
  */
 public final class ColorCode {
 
-    private final byte[] spikes = new byte[MastermindGame.NUMBER_SLOTS];
+    /**
+     * Largest code space whose color codes are kept in a table (about 5 MB
+     * when full).
+     */
+    static final int MAX_TABLE_CODE_COUNT = 1 << 16;
+
+    private static final ConcurrentMap<GameSpec, ColorCode[]> TABLES =
+            new ConcurrentHashMap<>();
+
+    private final GameSpec spec;
+    private final byte[] spikes;
+    private final int index;
+
+    private ColorCode(GameSpec spec, int index) {
+        this.spec = spec;
+        this.index = index;
+        this.spikes = new byte[spec.getSlots()];
+        int remainder = index;
+        for (int j = spikes.length - 1; j >= 0; j--) {
+            spikes[j] = (byte) (remainder % spec.getColors());
+            remainder /= spec.getColors();
+        }
+    }
 
     /**
-     * Returns the ith spike.
-     * 
-     * @param i
-     *            specified spike to return
-     * @return integral representation of color.
+     * Returns the color code with the specified index. Color codes are
+     * numbered in base {@code colors}, the first slot being the most
+     * significant digit.
+     *
+     * @param spec
+     *            dimensions of the game
+     * @param index
+     *            from 0 to {@code spec.getCodeCount() - 1}
+     * @return color code
      */
-    public byte get(int i) {
-        if (i < 0 || i >= spikes.length) {
-            throw new IllegalArgumentException("Number must be between 0 and "
-                    + (MastermindGame.NUMBER_SLOTS - 1));
+    public static ColorCode of(GameSpec spec, int index) {
+        if (index < 0 || index >= spec.getCodeCount()) {
+            throw new IllegalArgumentException("Index must be between 0 and "
+                    + (spec.getCodeCount() - 1));
+        } else if (spec.getCodeCount() > MAX_TABLE_CODE_COUNT) {
+            return new ColorCode(spec, index);
         }
-        return spikes[i];
+        final ColorCode[] table = TABLES.computeIfAbsent(spec,
+                key -> new ColorCode[key.getCodeCount()]);
+        ColorCode code = table[index];
+        if (code == null) {
+            // Two threads may create the same code, both copies are equal
+            // and safely published by their final fields
+            code = new ColorCode(spec, index);
+            table[index] = code;
+        }
+        return code;
     }
 
     /**
-     * Defines the color of the ith spike.
+     * Returns the color code of the default game with the given spikes.
+     *
+     * @param spikes
+     *            integral representation of the colors, at least
+     *            {@code NUMBER_SLOTS} of them
+     * @return color code
+     */
+    public static ColorCode of(byte[] spikes) {
+        return of(GameSpec.DEFAULT, spikes);
+    }
+
+    /**
+     * Returns the color code with the given spikes.
+     *
+     * @param spec
+     *            dimensions of the game
+     * @param spikes
+     *            integral representation of the colors, at least as many as
+     *            the spec has slots
+     * @return color code
+     */
+    public static ColorCode of(GameSpec spec, byte[] spikes) {
+        if (spikes.length < spec.getSlots()) {
+            throw new IllegalArgumentException("Color code needs "
+                    + spec.getSlots() + " spikes.");
+        }
+        int index = 0;
+        for (int i = 0; i < spec.getSlots(); i++) {
+            if (spikes[i] < 0 || spikes[i] >= spec.getColors()) {
+                throw new IllegalArgumentException("Color must be between 0 "
+                        + "and " + (spec.getColors() - 1));
+            }
+            index = index * spec.getColors() + spikes[i];
+        }
+        return of(spec, index);
+    }
+
+    /**
+     * Returns the index of this color code, see {@link #of(GameSpec, int)}.
+     *
+     * @return index from 0 to {@code getSpec().getCodeCount() - 1}
+     */
+    public int index() {
+        return index;
+    }
+
+    /**
+     * Returns the dimensions of the game this color code belongs to.
+     *
+     * @return spec of the game
+     */
+    public GameSpec getSpec() {
+        return spec;
+    }
+
+    /**
+     * Returns the ith spike.
      * 
      * @param i
-     *            specified spike to set
-     * @param value
-     *            integral representation of color.
+     *            specified spike to return
+     * @return integral representation of color.
      */
-    public void set(int i, byte value) {
-        if (i < 0 || i >= spikes.length) {
-            throw new IllegalArgumentException("Number must be between 0 and "
-                    + (MastermindGame.NUMBER_SLOTS - 1));
-        }
-        spikes[i] = value;
+    public byte get(int i) {
+        checkSlot(i);
+        return spikes[i];
     }
 
     /**
      * Evaluates {@code other}. It takes {@code this} as the secret. (Given the
-     * rules of Mastermind, it also works vice-versa)
+     * rules of Mastermind, it also works vice-versa). This is the reference
+     * implementation, the machine guesser looks ratings up in a precomputed
+     * table instead. Ratings are shared instances, so nothing is allocated.
      *
      * @param other
      *            Colorcode to evaluate
      * @return calculated Rating
      */
     public Rating evaluate(ColorCode other) {
+        return Rating.ofPacked(spec, evaluateIndex(other));
+    }
 
-        byte absolutecounter = 0;
-        byte blackcounter = 0;
-
-        final byte[] numberOfOccurrInThis =
-                new byte[MastermindGame.NUMBER_COLORS];
-        final byte[] numberOfOccurrInOther =
-                new byte[MastermindGame.NUMBER_COLORS];
-
-        // Count occurrences of every Color
-        for (final byte spike : this.spikes) {
-            numberOfOccurrInThis[spike]++;
-        }
-        for (final byte spike : other.spikes) {
-            numberOfOccurrInOther[spike]++;
+    /**
+     * Evaluates {@code other} like {@link #evaluate(ColorCode)}, but returns
+     * the rating as one number: {@code black * (slots + 1) + white}.
+     *
+     * @param other
+     *            Colorcode to evaluate
+     * @return packed rating from 0 to {@code (slots + 1) * (slots + 1) - 1}
+     */
+    public int evaluateIndex(ColorCode other) {
+        if (other.spikes.length != spikes.length) {
+            throw new IllegalArgumentException(
+                    "Color codes have a different number of slots.");
         }
 
-        // Calculate absolute number of black/white spikes
-        for (int i = 0; i < numberOfOccurrInOther.length; i++) {
-            absolutecounter += Math.min(numberOfOccurrInThis[i],
-                    numberOfOccurrInOther[i]);
-        }
+        int blackcounter = 0;
+        int absolutecounter = 0;
+        // Spikes of other already matched by a spike of this, one bit per
+        // slot
+        int matched = 0;
 
-        // Calculate Black spikes
+        // Calculate black spikes
         for (int i = 0; i < spikes.length; i++) {
-
             if (this.spikes[i] == other.spikes[i]) {
                 blackcounter++;
             }
         }
 
-        // Calculate black spikes
-        final byte white = (byte) (absolutecounter - blackcounter);
+        // Calculate absolute number of black/white spikes: every spike of
+        // this meets the first unmatched spike of the same color in other
+        for (final byte spike : this.spikes) {
+            for (int j = 0; j < other.spikes.length; j++) {
+                if ((matched & 1 << j) == 0 && other.spikes[j] == spike) {
+                    matched |= 1 << j;
+                    absolutecounter++;
+                    break;
+                }
+            }
+        }
 
-        return new Rating(blackcounter, white);
+        final int white = absolutecounter - blackcounter;
+        return spec.pack(blackcounter, white);
     }
 
     /**
-     * Generates a random ColorCode. It uses {@code java.util.Random}.
+     * Evaluates many color codes against this one, like
+     * {@link #evaluateIndex(ColorCode)} with this as the guess. The codes are
+     * given by their index and rated in one loop by the rating engine of the
+     * code space, without creating color codes.
+     *
+     * @param codes
+     *            indices of the color codes to evaluate
+     * @param ratings
+     *            receives the packed rating of each code, at least as long as
+     *            {@code codes}
+     */
+    public void evaluateAll(int[] codes, byte[] ratings) {
+        if (ratings.length < codes.length) {
+            throw new IllegalArgumentException(
+                    "Ratings need room for " + codes.length + " codes.");
+        }
+        RatingEngine.forSpec(spec).rateAll(index, codes, codes.length,
+                ratings);
+    }
+
+    /**
+     * Generates a random ColorCode of the default game. It uses
+     * {@code java.util.Random}.
      *
      * @return random color code
      */
     public static ColorCode random() {
-        final Random r = new Random();
-        final ColorCode random = new ColorCode();
+        return random(GameSpec.DEFAULT);
+    }
+
+    /**
+     * Generates a random ColorCode. It uses {@code java.util.Random}.
+     *
+     * @param spec
+     *            dimensions of the game
+     * @return random color code
+     */
+    public static ColorCode random(GameSpec spec) {
+        return of(spec, new Random().nextInt(spec.getCodeCount()));
+    }
 
-        for (int i = 0; i < random.spikes.length; i++) {
-            random.spikes[i] = (byte) (r
-                    .nextInt(MastermindGame.NUMBER_COLORS));
+    /**
+     * Compares color codes by code space and index.
+     *
+     * @param obj
+     *            object to compare to
+     * @return true if param is a color code with the same colors, slots and
+     *         spikes
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        } else if (!(obj instanceof ColorCode)) {
+            return false;
         }
-        return random;
+        ColorCode other = (ColorCode) obj;
+        return index == other.index
+                && spec.codeSpaceKey() == other.spec.codeSpaceKey();
+    }
+
+    @Override
+    public int hashCode() {
+        return index * 31 + spec.codeSpaceKey();
     }
 
     @Override
@@ -112,4 +270,11 @@ public final class ColorCode {
         sb.append(spikes[spikes.length - 1]);
         return sb.toString();
     }
+
+    private void checkSlot(int i) {
+        if (i < 0 || i >= spikes.length) {
+            throw new IllegalArgumentException("Number must be between 0 and "
+                    + (spikes.length - 1));
+        }
+    }
 }
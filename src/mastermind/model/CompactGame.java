@@ -0,0 +1,222 @@
+package mastermind.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A game that only keeps its history, for servers that hold many sessions.
+ * Moves are stored as {@code short} indices, ratings as packed bytes and the
+ * secret as an index. The candidates of the machine guesser are not kept:
+ * every machine move recomputes them, and its symmetry, from the rated moves.
+ * Color codes and ratings are handed out as the shared instances of
+ * {@link ColorCode#of(GameSpec, int)} and {@link Rating}.
+ * <p>
+ * A game of the default dimensions takes 96 bytes of heap with compressed
+ * references: 40 for the object, 32 for a {@code short[7]} and 24 for a
+ * {@code byte[7]}. A million idle sessions measured 92 MB. Specs and
+ * strategies are shared with other games. A {@link Game} of the same
+ * dimensions measured 165 bytes while the human is guessing and 340 bytes
+ * with the candidates and symmetry of the machine guesser.
+ * <p>
+ * Only code spaces of at most {@value #MAX_CODE_COUNT} color codes are
+ * supported, so every index fits into a {@code short}. For them a machine
+ * move costs one pass over the code space per rated move on top of the
+ * strategy; the machine guesses like a {@link Game} with the same strategy.
+ */
+public final class CompactGame implements MastermindGame {
+
+    /**
+     * Largest code space, the number of values of a {@code short}.
+     */
+    public static final int MAX_CODE_COUNT = 1 << 16;
+
+    /**
+     * Rating of a machine move that is not rated yet.
+     */
+    private static final byte UNRATED = -1;
+
+    private final GameSpec spec;
+    private final GuessStrategy strategy;
+    private final short[] moves;
+    private final byte[] ratings;
+    private int secret;
+    private byte moveCount;
+    private boolean machineIsGuessing;
+
+    /**
+     * Constructs a game with the specified dimensions where the guesser is set
+     * as specified in the argument and the machine guesses according to
+     * {@code strategy}.
+     *
+     * @param spec
+     *            dimensions of the game, at most {@value #MAX_CODE_COUNT}
+     *            color codes
+     * @param machineIsGuessing
+     *            true if and only if the machine shall be the guesser
+     * @param strategy
+     *            strategy of the machine guesser, may be shared by many games
+     */
+    public CompactGame(GameSpec spec, boolean machineIsGuessing,
+            GuessStrategy strategy) {
+        if (spec == null || strategy == null) {
+            throw new IllegalArgumentException(
+                    "Spec and strategy must not be null.");
+        } else if (spec.getCodeCount() > MAX_CODE_COUNT) {
+            throw new IllegalArgumentException("At most " + MAX_CODE_COUNT
+                    + " color codes fit into a compact game. Use Game for "
+                    + spec);
+        }
+        this.spec = spec;
+        this.strategy = strategy;
+        this.moves = new short[spec.getMaxMoves()];
+        this.ratings = new byte[spec.getMaxMoves()];
+        this.machineIsGuessing = machineIsGuessing;
+        initialize();
+    }
+
+    private void initialize() {
+        moveCount = 0;
+        Arrays.fill(ratings, UNRATED);
+        secret = machineIsGuessing ? -1
+                : ThreadLocalRandom.current().nextInt(spec.getCodeCount());
+    }
+
+    @Override
+    public GameSpec getSpec() {
+        return spec;
+    }
+
+    /**
+     * Returns the strategy of the machine guesser.
+     *
+     * @return strategy
+     */
+    public GuessStrategy getStrategy() {
+        return strategy;
+    }
+
+    @Override
+    public void switchGuesser() {
+        machineIsGuessing = !machineIsGuessing;
+        initialize();
+    }
+
+    @Override
+    public boolean isMachineGuessing() {
+        return machineIsGuessing;
+    }
+
+    @Override
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    @Override
+    public ColorCode getGameState(int moveNo) {
+        if (moveNo > moveCount && moveNo > 0) {
+            throw new IllegalArgumentException(
+                    "The specified move number is not valid.");
+        }
+        return moveNo < moveCount ? ColorCode.of(spec, moveAt(moveNo)) : null;
+    }
+
+    @Override
+    public Rating getRating(int moveNo) {
+        if (moveNo < 0 || moveNo >= moveCount) {
+            throw new IllegalArgumentException(
+                    "The specified move number is not valid.");
+        }
+        return ratings[moveNo] == UNRATED ? null
+                : Rating.ofPacked(spec, ratingAt(moveNo));
+    }
+
+    @Override
+    public ColorCode getSecret() {
+        if (machineIsGuessing) {
+            throw new IllegalStateException(
+                    "Computer doesn't know the secret since it is guesser.");
+        } else if (!gameIsOver()) {
+            throw new IllegalStateException(
+                    "Game is not over. So the secret is still secret.");
+        }
+        return ColorCode.of(spec, secret);
+    }
+
+    @Override
+    public void humanMove(ColorCode move) {
+        if (machineIsGuessing) {
+            throw new IllegalStateException(
+                    "Computer is guesser, so moves are made automatically.");
+        } else if (move.getSpec().codeSpaceKey() != spec.codeSpaceKey()) {
+            throw new IllegalArgumentException(
+                    "Color code does not match the dimensions of the game.");
+        }
+        addMove(move.index());
+        ratings[moveCount - 1] = (byte) RatingEngine.forSpec(spec)
+                .rate(secret, move.index());
+    }
+
+    @Override
+    public ColorCode machineMove() {
+        if (!machineIsGuessing) {
+            throw new IllegalStateException(
+                    "Human is guesser, so the machine doesn't make moves.");
+        }
+        final CandidateSet candidates = new PossibilityList(spec);
+        Symmetry symmetry = Symmetry.of(spec);
+        for (int i = 0; i < moveCount; i++) {
+            if (ratings[i] != UNRATED) {
+                candidates.retain(moveAt(i), ratingAt(i));
+            }
+            symmetry = symmetry.after(moveAt(i));
+        }
+        if (candidates.count() == 0) {
+            return null;
+        } else if (gameIsOver()) {
+            // The controller is just assuring that human was not cheating
+            return ColorCode.of(spec, candidates.first());
+        }
+        final int guess = strategy.nextGuess(candidates, symmetry);
+        addMove(guess);
+        return ColorCode.of(spec, guess);
+    }
+
+    @Override
+    public void processEval(ColorCode move, Rating rating) {
+        if (moveCount == 0 || move.getSpec().codeSpaceKey() != spec
+                .codeSpaceKey() || move.index() != moveAt(moveCount - 1)) {
+            throw new IllegalArgumentException(
+                    "Only last move can get evaluated.");
+        }
+        ratings[moveCount - 1] = (byte) spec.pack(rating);
+    }
+
+    private int moveAt(int moveNo) {
+        return moves[moveNo] & 0xFFFF;
+    }
+
+    /**
+     * Returns the packed rating of a move, which may be above
+     * {@link Byte#MAX_VALUE}.
+     */
+    private int ratingAt(int moveNo) {
+        return ratings[moveNo] & 0xFF;
+    }
+
+    private void addMove(int index) {
+        if (gameIsOver()) {
+            throw new IllegalStateException("The game is over.");
+        }
+        moves[moveCount] = (short) index;
+        ratings[moveCount] = UNRATED;
+        moveCount++;
+    }
+
+    private boolean gameIsOver() {
+        final boolean full = moveCount == spec.getMaxMoves();
+        final boolean won = moveCount != 0
+                && ratings[moveCount - 1] != UNRATED
+                && ratingAt(moveCount - 1) == spec.pack(spec.getSlots(), 0);
+        return full || won;
+    }
+}
@@ -0,0 +1,115 @@
+package mastermind.model;
+
+/**
+ * Computes every rating from the digits of the indices. Needs no memory per
+ * color code, so it works for code spaces too large for a table.
+ */
+final class DirectRatingEngine extends RatingEngine {
+
+    private final int colors;
+    private final int slots;
+    private final ThreadLocal<int[]> balances;
+    private final ThreadLocal<int[]> digitBuffers;
+
+    /**
+     * Constructs an engine for the specified code space.
+     *
+     * @param spec
+     *            dimensions of the game
+     */
+    DirectRatingEngine(GameSpec spec) {
+        super(spec);
+        this.colors = spec.getColors();
+        this.slots = spec.getSlots();
+        this.balances = ThreadLocal.withInitial(() -> new int[colors]);
+        this.digitBuffers = ThreadLocal.withInitial(() -> new int[slots]);
+    }
+
+    @Override
+    int rate(int secret, int guess) {
+        // Unmatched spikes per color: positive for the secret, negative for
+        // the guess. A spike meeting one of the other side is a white one.
+        final int[] balance = balances.get();
+        int black = 0;
+        int white = 0;
+        for (int j = 0; j < slots; j++) {
+            int s = secret % colors;
+            int g = guess % colors;
+            secret /= colors;
+            guess /= colors;
+            if (s == g) {
+                black++;
+            } else {
+                if (balance[s]++ < 0) {
+                    white++;
+                }
+                if (balance[g]-- > 0) {
+                    white++;
+                }
+            }
+        }
+        for (int c = 0; c < colors; c++) {
+            balance[c] = 0;
+        }
+        return getSpec().pack(black, white);
+    }
+
+    /**
+     * {@inheritDoc} The digits of the guess are computed once, into a buffer
+     * of the thread.
+     */
+    @Override
+    void rateAll(int guess, int[] codes, int count, byte[] ratings) {
+        final int[] guessDigits = digitBuffers.get();
+        digits(guess, guessDigits);
+        final int[] balance = balances.get();
+        for (int i = 0; i < count; i++) {
+            ratings[i] = (byte) rate(codes[i], guessDigits, balance);
+        }
+    }
+
+    @Override
+    void countAll(int guess, int[] codes, int count, int[] histogram) {
+        final int[] guessDigits = digitBuffers.get();
+        digits(guess, guessDigits);
+        final int[] balance = balances.get();
+        for (int i = 0; i < count; i++) {
+            histogram[rate(codes[i], guessDigits, balance)]++;
+        }
+    }
+
+    private void digits(int code, int[] digits) {
+        for (int j = 0; j < slots; j++) {
+            digits[j] = code % colors;
+            code /= colors;
+        }
+    }
+
+    /**
+     * Rates a secret against the digits of a guess, like
+     * {@link #rate(int, int)}.
+     */
+    private int rate(int secret, int[] guessDigits, int[] balance) {
+        int black = 0;
+        int white = 0;
+        for (int j = 0; j < slots; j++) {
+            int s = secret % colors;
+            int g = guessDigits[j];
+            secret /= colors;
+            if (s == g) {
+                black++;
+            } else {
+                if (balance[s]++ < 0) {
+                    white++;
+                }
+                if (balance[g]-- > 0) {
+                    white++;
+                }
+            }
+        }
+        for (int c = 0; c < colors; c++) {
+            balance[c] = 0;
+        }
+        return getSpec().pack(black, white);
+    }
+}
@@ -0,0 +1,22 @@
+package mastermind.model;
+
+/**
+ * Minimizes the expected number of candidates left after the rating.
+ */
+final class ExpectedSizeStrategy extends PartitionStrategy {
+
+    @Override
+    public String getName() {
+        return "expected";
+    }
+
+    @Override
+    double score(int[] histogram, int count) {
+        // The expected size is sum(size * size) / count
+        long sum = 0;
+        for (int size : histogram) {
+            sum += (long) size * size;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,18 @@
+package mastermind.model;
+
+/**
+ * Guesses the consistent color code with the lowest index. Fast, but needs
+ * more moves than the strategies that look at partitions.
+ */
+final class FirstConsistentStrategy implements GuessStrategy {
+
+    @Override
+    public String getName() {
+        return "first";
+    }
+
+    @Override
+    public int nextGuess(CandidateSet candidates) {
+        return candidates.first();
+    }
+}
@@ -1,40 +1,115 @@
 package mastermind.model;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 /**
  * An implementation to the Mastermind game logic.
  */
 public final class Game implements MastermindGame {
 
+    private final GameSpec spec;
     private boolean machineIsGuessing;
     private byte moveCount;
     private ColorCode[] moves;
     private Rating[] ratings;
     private ColorCode secret;
-    private PossibilityList posslist;
+    private CandidateSet candidates;
+    private Symmetry symmetry;
+    private final GuessStrategy strategy;
+    private long lastComputeNanos;
+    private Speculation speculation;
+    private Future<Integer> pendingGuess;
+    private OpeningBook book;
+    private int bookNode;
 
     /**
      * Constructs a game where the guesser is set as specified in the argument.
+     * The machine guesses the first consistent color code.
      *
      * @param machineIsGuessing
      *            true if and only if the machine shall be the guesser
      */
     public Game(boolean machineIsGuessing) {
+        this(machineIsGuessing, StrategyType.FIRST_CONSISTENT.create());
+    }
+
+    /**
+     * Constructs a game where the guesser is set as specified in the argument
+     * and the machine guesses according to {@code strategy}.
+     *
+     * @param machineIsGuessing
+     *            true if and only if the machine shall be the guesser
+     * @param strategy
+     *            strategy of the machine guesser
+     */
+    public Game(boolean machineIsGuessing, GuessStrategy strategy) {
+        this(GameSpec.DEFAULT, machineIsGuessing, strategy);
+    }
+
+    /**
+     * Constructs a game with the specified dimensions where the guesser is set
+     * as specified in the argument and the machine guesses according to
+     * {@code strategy}.
+     *
+     * @param spec
+     *            dimensions of the game
+     * @param machineIsGuessing
+     *            true if and only if the machine shall be the guesser
+     * @param strategy
+     *            strategy of the machine guesser
+     */
+    public Game(GameSpec spec, boolean machineIsGuessing,
+            GuessStrategy strategy) {
+        if (spec == null || strategy == null) {
+            throw new IllegalArgumentException(
+                    "Spec and strategy must not be null.");
+        }
+        this.spec = spec;
         this.machineIsGuessing = machineIsGuessing;
+        this.strategy = strategy;
         initialize();
     }
 
     private void initialize() {
-        this.moves = new ColorCode[MAX_MOVES];
-        this.ratings = new Rating[MAX_MOVES];
+        cancelSpeculation();
+        releaseCandidates();
+        this.moves = new ColorCode[spec.getMaxMoves()];
+        this.ratings = new Rating[spec.getMaxMoves()];
         moveCount = 0;
+        lastComputeNanos = 0;
+        bookNode = 0;
         if (machineIsGuessing) {
-            posslist = new PossibilityList();
+            candidates = spec.getCodeCount() < OffHeapPossibilityList
+                    .MIN_CODE_COUNT ? new PossibilityList(spec)
+                            : new OffHeapPossibilityList(spec);
+            symmetry = Symmetry.of(spec);
             secret = null;
         } else {
-            secret = ColorCode.random();
+            secret = ColorCode.random(spec);
         }
     }
 
+    /**
+     * Builds the tables of the machine guesser for the specified dimensions
+     * now. Otherwise they are built lazily when the machine guesser needs them
+     * for the first time. Tables are cached per number of colors and slots.
+     *
+     * @param spec
+     *            dimensions of the game
+     */
+    public static void preloadTables(GameSpec spec) {
+        RatingEngine.forSpec(spec);
+        PartitionIndex.forSpec(spec);
+    }
+
+    @Override
+    public GameSpec getSpec() {
+        return spec;
+    }
+
     @Override
     public void switchGuesser() {
         machineIsGuessing = !machineIsGuessing;
@@ -51,6 +126,138 @@ public final class Game implements MastermindGame {
         return moveCount;
     }
 
+    /**
+     * Returns the strategy of the machine guesser.
+     *
+     * @return strategy
+     */
+    public GuessStrategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Returns how long the strategy needed to compute the last machine move.
+     * If the move was computed speculatively, only the time spent waiting for
+     * it counts.
+     *
+     * @return compute time in nanoseconds, 0 if there was no machine move yet
+     */
+    public long getLastComputeNanos() {
+        return lastComputeNanos;
+    }
+
+    /**
+     * Returns the number of color codes that are still consistent with all
+     * ratings. Only if machine is guessing!
+     *
+     * @return number of remaining candidates
+     */
+    public int getCandidateCount() {
+        if (!machineIsGuessing) {
+            throw new IllegalStateException(
+                    "Human is guesser, so the machine has no candidates.");
+        }
+        return candidates.count();
+    }
+
+    /**
+     * Returns the permutations of colors and slots that leave all moves so
+     * far unchanged. The strategy only searches one guess of every class they
+     * form. Only if machine is guessing!
+     *
+     * @return symmetry of the next move
+     */
+    public Symmetry getSymmetry() {
+        if (!machineIsGuessing) {
+            throw new IllegalStateException(
+                    "Human is guesser, so the machine has no candidates.");
+        }
+        return symmetry;
+    }
+
+    /**
+     * Lets the machine guesser take its moves from an opening book as long as
+     * the ratings stay in the book. Afterwards, or if the human was cheating,
+     * the strategy computes the moves. Only the code space has to match: the
+     * book takes precedence over the strategy of the game and may come from
+     * another one, for example from the {@link OptimalSolver}. A book does
+     * not know the number of moves of the game either, a line of the book
+     * longer than the game simply ends with it. If the game has already
+     * started, the book is used from the next game on.
+     *
+     * @param openingBook
+     *            book for the code space of this game, or null for none
+     * @throws IllegalArgumentException
+     *             if the book was computed for another code space
+     */
+    public void setOpeningBook(OpeningBook openingBook) {
+        if (openingBook != null && openingBook.getSpec()
+                .codeSpaceKey() != spec.codeSpaceKey()) {
+            throw new IllegalArgumentException(openingBook
+                    + " does not match " + spec);
+        }
+        book = openingBook;
+        bookNode = moveCount == 0 ? 0 : OpeningBook.NO_NODE;
+    }
+
+    /**
+     * Starts computing the next machine move for every rating the last
+     * machine move can get, while the rating is not known yet. The rating
+     * passed to {@link #processEval} then picks the matching computation and
+     * cancels the others, so the following {@link #machineMove} only has to
+     * wait for what is left of it. Only if machine is guessing!
+     * <p>
+     * Nothing is started if the last move is already rated, is the last move
+     * of the game, there are more than {@value Speculation#MAX_CANDIDATES}
+     * candidates or the game follows an opening book.
+     *
+     * @param executor
+     *            executes the computations; cancelling them interrupts their
+     *            threads
+     * @return true if the computations were started
+     */
+    public boolean speculate(ExecutorService executor) {
+        if (!machineIsGuessing) {
+            throw new IllegalStateException(
+                    "Human is guesser, so the machine doesn't make moves.");
+        } else if (moveCount == 0 || ratings[lastMove()] != null
+                || moveCount == spec.getMaxMoves() || isInBook()
+                || candidates.count() > Speculation.MAX_CANDIDATES) {
+            return false;
+        }
+        cancelSpeculation();
+        speculation = new Speculation(strategy, candidates,
+                moves[lastMove()].index(), symmetry,
+                executor);
+        return true;
+    }
+
+    /**
+     * Cancels the speculative computation of the next machine move and
+     * releases the candidates, which large code spaces keep off the heap.
+     * Games that are abandoned should call this; afterwards the game must not
+     * be used anymore.
+     */
+    public void dispose() {
+        cancelSpeculation();
+        releaseCandidates();
+    }
+
+    /**
+     * Cancels the speculative computation of the next machine move, if there
+     * is one.
+     */
+    public void cancelSpeculation() {
+        if (speculation != null) {
+            speculation.cancel();
+            speculation = null;
+        }
+        if (pendingGuess != null) {
+            pendingGuess.cancel(true);
+            pendingGuess = null;
+        }
+    }
+
     @Override
     public ColorCode getGameState(int moveNo) {
         if (moveNo > moveCount && moveNo > 0) {
@@ -63,11 +270,11 @@ public final class Game implements MastermindGame {
 
     @Override
     public Rating getRating(int moveNo) {
-        if (moveNo > moveCount) {
+        if (moveNo < 0 || moveNo >= moveCount) {
             throw new IllegalArgumentException(
                     "The specified move number is not valid.");
         } else {
-            return ratings[lastMove()];
+            return ratings[moveNo];
         }
     }
 
@@ -89,6 +296,9 @@ public final class Game implements MastermindGame {
         if (machineIsGuessing) {
             throw new IllegalStateException(
                     "Computer is guesser, so moves are made automatically.");
+        } else if (move.getSpec().codeSpaceKey() != spec.codeSpaceKey()) {
+            throw new IllegalArgumentException(
+                    "Color code does not match the dimensions of the game.");
         } else {
             move(move);
             evaluateLastMove();
@@ -101,44 +311,98 @@ public final class Game implements MastermindGame {
             throw new IllegalStateException(
                     "Human is guesser, so the machine doesn't make moves.");
         } else {
-            ColorCode guess = null;
-            for (int i = 0; i < PossibilityList.getTotalNoCombis(); i++) {
-                if (posslist.combiIsPossible(i)) {
-                    guess = PossibilityList.getColorCode(i);
-                    if (!gameIsOver()) {
-                        move(guess);
-                    }
-                    // else the controller is just assuring that human was not
-                    // cheating
-                    break;
-                }
+            if (candidates.count() == 0) {
+                return null;
+            } else if (gameIsOver()) {
+                // The controller is just assuring that human was not cheating
+                return ColorCode.of(spec, candidates.first());
+            }
+            long start = System.nanoTime();
+            final int i;
+            if (isInBook()) {
+                i = book.guess(bookNode);
+            } else if (pendingGuess != null) {
+                i = takePendingGuess();
+            } else {
+                i = strategy.nextGuess(candidates, symmetry);
             }
+            lastComputeNanos = System.nanoTime() - start;
+            ColorCode guess = ColorCode.of(spec, i);
+            move(guess);
+            symmetry = symmetry.after(i);
             return guess;
         }
     }
 
     @Override
     public void processEval(ColorCode move, Rating rating) {
-        if (move != moves[lastMove()]) {
+        if (moveCount == 0 || !move.equals(moves[lastMove()])) {
             throw new IllegalArgumentException(
                     "Only last move can get evaluated.");
         }
         ratings[lastMove()] = rating;
-        for (int i = 0; i < PossibilityList.getTotalNoCombis(); i++) {
-            if (posslist.combiIsPossible(i)) {
-                ColorCode it = PossibilityList.getColorCode(i);
-                if (!it.evaluate(move).equals(rating)) {
-                    posslist.remove(i);
-                }
-            }
+        final int guess = move.index();
+        final int packedRating = spec.pack(rating);
+        if (isInBook()) {
+            bookNode = book.child(bookNode, packedRating);
+        }
+        if (speculation != null) {
+            // The candidates have been partitioned by rating already
+            release(candidates);
+            candidates = speculation.candidates(packedRating);
+            pendingGuess = speculation.take(packedRating);
+            speculation = null;
+        } else {
+            // A guess left over from an earlier speculation is stale now
+            cancelSpeculation();
+            candidates.retain(guess, packedRating);
         }
+        // Below this number of candidates a list of indices needs less memory
+        // than a bitset over all color codes (32 bits vs. 1 bit per code)
+        if (!(candidates instanceof SurvivorList) && candidates
+                .count() <= spec.getCodeCount() / Integer.SIZE) {
+            CandidateSet bitset = candidates;
+            candidates = new SurvivorList(bitset);
+            release(bitset);
+        }
+    }
+
+    private void releaseCandidates() {
+        release(candidates);
+        candidates = null;
+    }
 
+    private static void release(CandidateSet set) {
+        if (set instanceof OffHeapPossibilityList) {
+            ((OffHeapPossibilityList) set).close();
+        }
+    }
+
+    private boolean isInBook() {
+        return book != null && bookNode != OpeningBook.NO_NODE;
+    }
+
+    private int takePendingGuess() {
+        try {
+            return pendingGuess.get();
+        } catch (InterruptedException ex) {
+            pendingGuess.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Waiting was interrupted.");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException("Speculation failed.", ex);
+        } finally {
+            pendingGuess = null;
+        }
     }
 
     private boolean gameIsOver() {
-        boolean full = moveCount == MAX_MOVES;
+        boolean full = moveCount == spec.getMaxMoves();
         boolean won = moveCount != 0
-                && ratings[lastMove()].getBlack() == NUMBER_SLOTS;
+                && ratings[lastMove()].getBlack() == spec.getSlots();
         return full || won;
     }
 
@@ -154,6 +418,7 @@ public final class Game implements MastermindGame {
         if (gameIsOver()) {
             throw new IllegalStateException("The game is over.");
         } else {
+            cancelSpeculation();
             moves[moveCount] = move;
             moveCount++;
         }
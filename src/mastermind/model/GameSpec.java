@@ -0,0 +1,178 @@
+package mastermind.model;
+
+/**
+ * The dimensions of a Mastermind game: number of colors, number of slots and
+ * maximum number of moves. Immutable; two specs with the same dimensions are
+ * equal.
+ */
+public final class GameSpec {
+
+    /**
+     * The classic game with {@value MastermindGame#NUMBER_COLORS} colors,
+     * {@value MastermindGame#NUMBER_SLOTS} slots and
+     * {@value MastermindGame#MAX_MOVES} moves.
+     */
+    public static final GameSpec DEFAULT = new GameSpec(
+            MastermindGame.NUMBER_COLORS, MastermindGame.NUMBER_SLOTS,
+            MastermindGame.MAX_MOVES);
+
+    /**
+     * Largest supported number of color codes, enough for 12 colors and 8
+     * slots. Candidates are kept in a bitset, which needs 64 MB at this size
+     * and is kept off the heap for large code spaces.
+     */
+    public static final int MAX_CODE_COUNT = 1 << 29;
+
+    /**
+     * Largest supported number of slots, so a rating fits into one byte.
+     */
+    public static final int MAX_SLOTS = 15;
+
+    private final byte colors;
+    private final byte slots;
+    private final byte maxMoves;
+    private final int codeCount;
+
+    /**
+     * Constructs a spec with the specified dimensions.
+     *
+     * @param colors
+     *            number of colors, at least 2
+     * @param slots
+     *            number of slots, from 1 to {@value #MAX_SLOTS}
+     * @param maxMoves
+     *            maximum number of moves, at least 1
+     * @throws IllegalArgumentException
+     *             if a dimension is out of range or there would be more than
+     *             {@value #MAX_CODE_COUNT} color codes
+     */
+    public GameSpec(int colors, int slots, int maxMoves) {
+        if (colors < 2 || colors > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "Number of colors must be between 2 and "
+                            + Byte.MAX_VALUE + ". Is " + colors);
+        } else if (slots < 1 || slots > MAX_SLOTS) {
+            throw new IllegalArgumentException(
+                    "Number of slots must be between 1 and " + MAX_SLOTS
+                            + ". Is " + slots);
+        } else if (maxMoves < 1 || maxMoves > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "Number of moves must be between 1 and "
+                            + Byte.MAX_VALUE + ". Is " + maxMoves);
+        }
+        long count = 1;
+        for (int i = 0; i < slots; i++) {
+            count *= colors;
+            if (count > MAX_CODE_COUNT) {
+                throw new IllegalArgumentException(colors + " colors and "
+                        + slots + " slots give more than " + MAX_CODE_COUNT
+                        + " color codes.");
+            }
+        }
+        this.colors = (byte) colors;
+        this.slots = (byte) slots;
+        this.maxMoves = (byte) maxMoves;
+        this.codeCount = (int) count;
+    }
+
+    /**
+     * Returns the number of colors.
+     *
+     * @return number of colors
+     */
+    public byte getColors() {
+        return colors;
+    }
+
+    /**
+     * Returns the number of slots for the colors.
+     *
+     * @return number of slots
+     */
+    public byte getSlots() {
+        return slots;
+    }
+
+    /**
+     * Returns the maximum number of moves.
+     *
+     * @return maximum number of moves
+     */
+    public byte getMaxMoves() {
+        return maxMoves;
+    }
+
+    /**
+     * Returns the number of distinct color codes.
+     *
+     * @return {@code colors ^ slots}
+     */
+    public int getCodeCount() {
+        return codeCount;
+    }
+
+    /**
+     * Returns the number of distinct packed ratings. Not all of them are
+     * achievable.
+     *
+     * @return number of packed ratings
+     */
+    int getNumberOutcomes() {
+        return (slots + 1) * (slots + 1);
+    }
+
+    /**
+     * Packs a number of black and white spikes into one value.
+     *
+     * @param black
+     *            number of black spikes
+     * @param white
+     *            number of white spikes
+     * @return packed rating from 0 to {@code getNumberOutcomes() - 1}
+     */
+    int pack(int black, int white) {
+        return black * (slots + 1) + white;
+    }
+
+    /**
+     * Packs a rating into one value.
+     *
+     * @param rating
+     *            rating to pack
+     * @return packed rating from 0 to {@code getNumberOutcomes() - 1}
+     */
+    int pack(Rating rating) {
+        return pack(rating.getBlack(), rating.getWhite());
+    }
+
+    /**
+     * Identifies the code space, that is colors and slots. Tables that do not
+     * depend on the number of moves are cached by this key.
+     *
+     * @return key of the code space
+     */
+    int codeSpaceKey() {
+        return colors << Byte.SIZE | slots;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        GameSpec other = (GameSpec) obj;
+        return colors == other.colors && slots == other.slots
+                && maxMoves == other.maxMoves;
+    }
+
+    @Override
+    public int hashCode() {
+        return (codeSpaceKey() << Byte.SIZE) | maxMoves;
+    }
+
+    @Override
+    public String toString() {
+        return colors + " colors, " + slots + " slots, " + maxMoves
+                + " moves";
+    }
+}
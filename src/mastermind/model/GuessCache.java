@@ -0,0 +1,299 @@
+package mastermind.model;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size-bounded cache of computed guesses that many games can share. The
+ * first moves of games with the same strategy and dimensions lead to the same
+ * candidates over and over, so a search can often be replaced by a lookup.
+ * <p>
+ * Entries are keyed by a 128 bit fingerprint of the candidates, their number,
+ * the code space and the name of the strategy. Sets of up to
+ * {@value #MAX_VERIFIED} candidates, which make up most entries, also keep
+ * their indices, so a hit is only taken if the candidates are the same. Larger
+ * sets are trusted on the fingerprint: two different sets of the same size
+ * share it with a chance of about 2^-128, and even a full cache of
+ * {@value #DEFAULT_CAPACITY} such entries collides with a chance below 2^-96.
+ * The fingerprint is not cryptographic, though, so this relies on the
+ * candidates following from the ratings of real games. The cache is split into
+ * stripes, each a {@code LinkedHashMap} in access order that drops its least
+ * recently used entry when full, so threads working on different candidate
+ * sets rarely wait for each other.
+ * <p>
+ * A strategy given the {@link Symmetry} of a game returns the guess it would
+ * return without, so the candidates alone identify the state: guesses computed
+ * with and without symmetry share their entries.
+ */
+public final class GuessCache {
+
+    /**
+     * Number of entries of the shared cache.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * Candidate sets larger than this are not cached, since computing the
+     * fingerprint needs a copy of the indices.
+     */
+    static final int MAX_CANDIDATES = 1 << 22;
+
+    /**
+     * Candidate sets up to this size keep their indices in the key, which
+     * takes at most a kilobyte per entry.
+     */
+    static final int MAX_VERIFIED = 1 << 8;
+
+    /**
+     * Number of stripes, chosen by the top four bits of the fingerprint.
+     */
+    private static final int STRIPES = 16;
+
+    private static final long MULTIPLIER_1 = 0x9E3779B97F4A7C15L;
+    private static final long MULTIPLIER_2 = 0xC2B2AE3D27D4EB4FL;
+
+    private static GuessCache shared;
+
+    /**
+     * Identifies a candidate set and a strategy.
+     */
+    private static final class Key {
+
+        private final long hash1;
+        private final long hash2;
+        private final int count;
+        private final int codeSpace;
+        private final String strategy;
+        /**
+         * Sorted indices of the candidates, or null for large sets.
+         */
+        private final int[] codes;
+
+        private Key(CandidateSet candidates, String strategy) {
+            int[] codes = new int[candidates.count()];
+            candidates.copyTo(codes);
+            long h1 = 0;
+            long h2 = codes.length;
+            // Both halves multiply, so structured sets that cancel out in a
+            // mix of shifts and xors alone do not collide
+            for (int code : codes) {
+                h1 = (h1 ^ code) * MULTIPLIER_1;
+                h1 ^= h1 >>> 29;
+                h2 = (h2 + code) * MULTIPLIER_2;
+            }
+            this.hash1 = h1;
+            this.hash2 = h2;
+            this.count = codes.length;
+            this.codeSpace = candidates.getSpec().codeSpaceKey();
+            this.strategy = strategy;
+            this.codes = codes.length <= MAX_VERIFIED ? codes : null;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash1 == other.hash1 && hash2 == other.hash2
+                    && count == other.count && codeSpace == other.codeSpace
+                    && strategy.equals(other.strategy)
+                    && Arrays.equals(codes, other.codes);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (hash1 ^ hash1 >>> 32);
+        }
+    }
+
+    /**
+     * One part of the cache with its own lock.
+     */
+    private final class Stripe extends LinkedHashMap<Key, Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        private Stripe() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Integer> eldest) {
+            if (size() > stripeCapacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Looks up guesses in the cache before asking another strategy.
+     */
+    private final class CachingStrategy implements GuessStrategy {
+
+        private final GuessStrategy strategy;
+
+        private CachingStrategy(GuessStrategy strategy) {
+            this.strategy = strategy;
+        }
+
+        @Override
+        public String getName() {
+            return strategy.getName();
+        }
+
+        @Override
+        public int nextGuess(CandidateSet candidates) {
+            return nextGuess(candidates, null);
+        }
+
+        /**
+         * Looks the guess up, computes it on a miss.
+         *
+         * @param symmetry
+         *            passed to the strategy, or null if unknown
+         */
+        @Override
+        public int nextGuess(CandidateSet candidates, Symmetry symmetry) {
+            if (candidates.count() > MAX_CANDIDATES) {
+                return compute(candidates, symmetry);
+            }
+            Key key = new Key(candidates, strategy.getName());
+            // Stripes are chosen by other bits than the buckets of the map
+            Stripe stripe = stripes[(int) (key.hash2 >>> 60)];
+            Integer guess;
+            synchronized (stripe) {
+                guess = stripe.get(key);
+            }
+            if (guess != null) {
+                hits.increment();
+                return guess;
+            }
+            // Computed outside of the lock, two threads may compute the same
+            // guess, but both get the same result
+            misses.increment();
+            guess = compute(candidates, symmetry);
+            synchronized (stripe) {
+                stripe.put(key, guess);
+            }
+            return guess;
+        }
+
+        private int compute(CandidateSet candidates, Symmetry symmetry) {
+            return symmetry == null ? strategy.nextGuess(candidates)
+                    : strategy.nextGuess(candidates, symmetry);
+        }
+    }
+
+    private final int stripeCapacity;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param capacity
+     *            maximum number of entries, at least 1
+     */
+    public GuessCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(
+                    "Capacity must be positive. Is " + capacity);
+        }
+        this.stripeCapacity = (capacity + STRIPES - 1) / STRIPES;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Returns the cache shared by all games of this process, with
+     * {@value #DEFAULT_CAPACITY} entries.
+     *
+     * @return shared cache
+     */
+    public static synchronized GuessCache getShared() {
+        if (shared == null) {
+            shared = new GuessCache(DEFAULT_CAPACITY);
+        }
+        return shared;
+    }
+
+    /**
+     * Wraps a strategy, so it looks up its guesses in this cache first. The
+     * strategy must be deterministic: the same candidates must give the same
+     * guess.
+     *
+     * @param strategy
+     *            strategy to wrap
+     * @return caching strategy with the same name
+     */
+    public GuessStrategy wrap(GuessStrategy strategy) {
+        return new CachingStrategy(strategy);
+    }
+
+    /**
+     * Returns the number of guesses found in the cache.
+     *
+     * @return number of hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of guesses that had to be computed.
+     *
+     * @return number of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of entries dropped to make room for new ones.
+     *
+     * @return number of evictions
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Counts the entries.
+     *
+     * @return number of cached guesses
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes all entries. The counters are kept.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d entries, %d hits, %d misses, %d evictions",
+                size(), getHits(), getMisses(), getEvictions());
+    }
+}
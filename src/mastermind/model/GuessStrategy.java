@@ -0,0 +1,50 @@
+package mastermind.model;
+
+/**
+ * Chooses the next color code the machine guesses. Implementations must be
+ * stateless or thread-safe, so one instance can serve several games.
+ */
+public interface GuessStrategy {
+
+    /**
+     * Returns a short name that identifies the strategy.
+     *
+     * @return name of the strategy
+     */
+    String getName();
+
+    /**
+     * Computes the next guess. Long computations should stop early when the
+     * calling thread is interrupted.
+     *
+     * @param candidates
+     *            color codes that are still consistent with all ratings, not
+     *            empty
+     * @return index of the color code to guess
+     * @throws java.util.concurrent.CancellationException
+     *             if the calling thread was interrupted and the computation
+     *             was abandoned
+     */
+    int nextGuess(CandidateSet candidates);
+
+    /**
+     * Computes the next guess, knowing which permutations of colors and slots
+     * map the candidates onto themselves. A strategy may search just the
+     * representatives of the guesses, but has to return the same guess as
+     * {@link #nextGuess(CandidateSet)}, so cached guesses and opening books
+     * stay valid. By default the symmetry is ignored.
+     *
+     * @param candidates
+     *            color codes that are still consistent with all ratings, not
+     *            empty
+     * @param symmetry
+     *            symmetry of the guesses that led to the candidates
+     * @return index of the color code to guess
+     * @throws java.util.concurrent.CancellationException
+     *             if the calling thread was interrupted and the computation
+     *             was abandoned
+     */
+    default int nextGuess(CandidateSet candidates, Symmetry symmetry) {
+        return nextGuess(candidates);
+    }
+}
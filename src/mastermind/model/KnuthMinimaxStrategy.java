@@ -0,0 +1,22 @@
+package mastermind.model;
+
+/**
+ * Knuth's strategy: minimizes the size of the largest partition, that is the
+ * number of candidates left in the worst case.
+ */
+final class KnuthMinimaxStrategy extends PartitionStrategy {
+
+    @Override
+    public String getName() {
+        return "knuth";
+    }
+
+    @Override
+    double score(int[] histogram, int count) {
+        int max = 0;
+        for (int size : histogram) {
+            max = Math.max(max, size);
+        }
+        return max;
+    }
+}
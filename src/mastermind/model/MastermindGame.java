@@ -6,17 +6,18 @@ package mastermind.model;
 public interface MastermindGame {
 
     /**
-     * Maximum number of moves.
+     * Maximum number of moves of the default game. Use {@link #getSpec()} for
+     * the dimensions of a specific game.
      */
     byte MAX_MOVES = 7;
 
     /**
-     * Number of colors.
+     * Number of colors of the default game.
      */
     byte NUMBER_COLORS = 6;
 
     /**
-     * Number of slots for the colors.
+     * Number of slots for the colors of the default game.
      */
     byte NUMBER_SLOTS = 4;
 
@@ -27,6 +28,13 @@ public interface MastermindGame {
      */
     void switchGuesser();
 
+    /**
+     * Returns the dimensions of this game.
+     *
+     * @return number of colors, slots and moves
+     */
+    GameSpec getSpec();
+
     /**
      * Determines who is guessing at the moment.
      *
@@ -53,13 +61,15 @@ public interface MastermindGame {
     ColorCode getGameState(int moveNo);
 
     /**
-     * Returns the black and white rating for move {@code moveNo}. Only if human
-     * is guessing! Prior, {@code humanMove()} must be called. {@code Rating} is
-     * a bean which has the black and white spike count as properties.
+     * Returns the black and white rating for move {@code moveNo}. If human is
+     * guessing, {@code humanMove()} computes it, otherwise
+     * {@code processEval()} sets it. {@code Rating} is a bean which has the
+     * black and white spike count as properties.
      *
      * @param moveNo
-     *            A valid move number.
-     * @return The rating in the number of black and white spikes.
+     *            A valid move number, from 0 to {@code getMoveCount() - 1}.
+     * @return The rating in the number of black and white spikes,
+     *         {@code null} for a machine move that is not rated yet.
      */
     Rating getRating(int moveNo);
 
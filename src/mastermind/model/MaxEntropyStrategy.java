@@ -0,0 +1,26 @@
+package mastermind.model;
+
+/**
+ * Maximizes the information gained by the rating, that is the entropy of the
+ * partition.
+ */
+final class MaxEntropyStrategy extends PartitionStrategy {
+
+    @Override
+    public String getName() {
+        return "entropy";
+    }
+
+    @Override
+    double score(int[] histogram, int count) {
+        // Entropy is log(count) - sum(size * log(size)) / count, so
+        // minimizing the sum maximizes the entropy
+        double sum = 0;
+        for (int size : histogram) {
+            if (size > 1) {
+                sum += size * Math.log(size);
+            }
+        }
+        return sum;
+    }
+}
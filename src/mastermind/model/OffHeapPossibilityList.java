@@ -0,0 +1,250 @@
+package mastermind.model;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A bitset over all color codes like {@link PossibilityList}, but stored in a
+ * direct buffer outside of the heap. Used for code spaces of at least
+ * {@value #MIN_CODE_COUNT} color codes: 12 colors and 8 slots need a 54 MB
+ * bitset that the garbage collector then never has to copy or scan.
+ * <p>
+ * Filtering splits the words into segments of {@value #SEGMENT_WORDS} words
+ * that are filtered in parallel on the common fork/join pool. Every task only
+ * writes the words of its own segments.
+ * <p>
+ * {@link #close()} frees the memory of the buffer at once if the JDK offers
+ * {@code sun.misc.Unsafe.invokeCleaner}, otherwise it is returned when the
+ * buffer is collected. A closed list must not be used anymore, and it must
+ * not be closed while another thread uses it.
+ */
+final class OffHeapPossibilityList implements CandidateSet, AutoCloseable {
+
+    /**
+     * Smallest code space whose candidates are kept off the heap (a 2 MB
+     * bitset).
+     */
+    static final int MIN_CODE_COUNT = 1 << 24;
+
+    /**
+     * Number of words filtered by one task.
+     */
+    private static final int SEGMENT_WORDS = 1 << 12;
+
+    /**
+     * Number of words whose color codes are rated in one batch.
+     */
+    private static final int BATCH_WORDS =
+            RatingEngine.BATCH_SIZE / Long.SIZE;
+
+    /**
+     * The unsafe instance and its method that frees a direct buffer, looked
+     * up reflectively as they are not part of the platform API. Null if the
+     * JDK does not have them.
+     */
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    /**
+     * Filters a range of segments, splitting it while it has more than one.
+     */
+    private final class FilterTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int guess;
+        private final int packedRating;
+        private final int from;
+        private final int to;
+
+        private FilterTask(int guess, int packedRating, int from, int to) {
+            this.guess = guess;
+            this.packedRating = packedRating;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                retainSegment(guess, packedRating, from);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new FilterTask(guess, packedRating, from, mid),
+                    new FilterTask(guess, packedRating, mid, to));
+        }
+    }
+
+    private final GameSpec spec;
+    private final int wordCount;
+    private ByteBuffer words;
+
+    /**
+     * Constructs a list where every color code is possible.
+     *
+     * @param spec
+     *            dimensions of the game
+     */
+    OffHeapPossibilityList(GameSpec spec) {
+        this.spec = spec;
+        final long codeCount = spec.getCodeCount();
+        this.wordCount = (int) ((codeCount + Long.SIZE - 1) / Long.SIZE);
+        this.words = ByteBuffer.allocateDirect(wordCount * Long.BYTES)
+                .order(ByteOrder.nativeOrder());
+        for (int u = 0; u < wordCount; u++) {
+            setWord(u, -1L);
+        }
+        // Clear the bits beyond the last combination
+        setWord(wordCount - 1, -1L >>> -codeCount);
+    }
+
+    @Override
+    public GameSpec getSpec() {
+        return spec;
+    }
+
+    @Override
+    public int count() {
+        long count = 0;
+        for (int u = 0; u < wordCount; u++) {
+            count += Long.bitCount(word(u));
+        }
+        return (int) count;
+    }
+
+    @Override
+    public boolean contains(int code) {
+        return (word(wordIndex(code)) & 1L << code) != 0;
+    }
+
+    @Override
+    public int first() {
+        for (int u = 0; u < wordCount; u++) {
+            long word = word(u);
+            if (word != 0) {
+                return codeOf(u, word);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void retain(int guess, int packedRating) {
+        final int segments = (wordCount + SEGMENT_WORDS - 1) / SEGMENT_WORDS;
+        ForkJoinPool.commonPool().invoke(
+                new FilterTask(guess, packedRating, 0, segments));
+    }
+
+    @Override
+    public int copyTo(int[] dest) {
+        int n = 0;
+        for (int u = 0; u < wordCount; u++) {
+            long word = word(u);
+            while (word != 0) {
+                dest[n++] = codeOf(u, word);
+                word &= word - 1;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Frees the buffer. Closing twice does nothing.
+     */
+    @Override
+    public void close() {
+        final ByteBuffer buffer = words;
+        words = null;
+        if (buffer != null && INVOKE_CLEANER != null) {
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } catch (ReflectiveOperationException ex) {
+                // Returned when the buffer is collected
+            }
+        }
+    }
+
+    /**
+     * Rates the possible color codes of one segment in batches and removes
+     * those that do not give the rating.
+     */
+    private void retainSegment(int guess, int packedRating, int segment) {
+        final RatingEngine engine = RatingEngine.forSpec(spec);
+        final int[] codes = RatingEngine.batchCodes();
+        final byte[] ratings = RatingEngine.batchRatings();
+        final int end = Math.min(wordCount, (segment + 1) * SEGMENT_WORDS);
+        for (int from = segment * SEGMENT_WORDS; from < end;
+                from += BATCH_WORDS) {
+            final int to = Math.min(end, from + BATCH_WORDS);
+            int n = 0;
+            for (int u = from; u < to; u++) {
+                long word = word(u);
+                while (word != 0) {
+                    codes[n++] = codeOf(u, word);
+                    word &= word - 1;
+                }
+            }
+            engine.rateAll(guess, codes, n, ratings);
+            for (int i = 0; i < n; i++) {
+                if ((ratings[i] & 0xFF) != packedRating) {
+                    int u = wordIndex(codes[i]);
+                    setWord(u, word(u) & ~(1L << codes[i]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a word with an absolute get, which does not touch the position
+     * of the buffer, so tasks on different words do not interfere.
+     */
+    private long word(int u) {
+        return buffer().getLong(u * Long.BYTES);
+    }
+
+    private void setWord(int u, long word) {
+        buffer().putLong(u * Long.BYTES, word);
+    }
+
+    private ByteBuffer buffer() {
+        final ByteBuffer buffer = words;
+        if (buffer == null) {
+            throw new IllegalStateException("Candidates are closed.");
+        }
+        return buffer;
+    }
+
+    /**
+     * Computes the code of the lowest bit of a word. Positions are computed
+     * as {@code long}, so they cannot overflow for the largest code spaces.
+     */
+    private static int codeOf(int u, long word) {
+        return (int) (((long) u << 6) + Long.numberOfTrailingZeros(word));
+    }
+
+    private static int wordIndex(int code) {
+        return code >>> 6;
+    }
+}
@@ -0,0 +1,237 @@
+package mastermind.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The decision tree of a strategy, read from a memory-mapped file. For a
+ * given code space the machine guesser is deterministic, so its whole play
+ * can be computed once: every node holds a guess and, per packed rating, the
+ * node that follows. A game that follows the book needs no search for its
+ * moves, and the book itself does not use the heap.
+ * <p>
+ * The file starts with a header: the magic number {@value #MAGIC}, the format
+ * version, the number of colors and slots (one byte each) and the name of the
+ * strategy (length as short, then UTF-8). The nodes follow in breadth-first
+ * order, the root first. A node is the index of its guess and one child node
+ * per packed rating, all of them {@code int}s. A child of -1 means there is no
+ * book for that rating.
+ */
+public final class OpeningBook {
+
+    /**
+     * Identifies a book file ("MMBK").
+     */
+    public static final int MAGIC = 0x4D4D424B;
+
+    private static final short VERSION = 1;
+
+    /**
+     * Marks a missing child.
+     */
+    static final int NO_NODE = -1;
+
+    /**
+     * A node that has an index but is not written yet.
+     */
+    private static final class Pending {
+
+        private final CandidateSet candidates;
+        private final int depth;
+
+        private Pending(CandidateSet candidates, int depth) {
+            this.candidates = candidates;
+            this.depth = depth;
+        }
+    }
+
+    private final GameSpec spec;
+    private final String strategyName;
+    private final ByteBuffer nodes;
+    private final int stride;
+    private final int nodeCount;
+
+    private OpeningBook(GameSpec spec, String strategyName, ByteBuffer nodes) {
+        this.spec = spec;
+        this.strategyName = strategyName;
+        this.nodes = nodes;
+        this.stride = (1 + spec.getNumberOutcomes()) * Integer.BYTES;
+        this.nodeCount = nodes.remaining() / stride;
+    }
+
+    /**
+     * Maps a book file into memory.
+     *
+     * @param file
+     *            file written by {@link #write}
+     * @return the book
+     * @throws IOException
+     *             if the file cannot be read or is not a valid book
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        final ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large for a book.");
+            }
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        }
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not an opening book.");
+            } else if (buffer.getShort() != VERSION) {
+                throw new IOException(file + " has an unknown version.");
+            }
+            byte colors = buffer.get();
+            byte slots = buffer.get();
+            byte[] name = new byte[buffer.getShort()];
+            buffer.get(name);
+            // Any number of moves, a book only depends on the code space
+            GameSpec spec = new GameSpec(colors, slots, Byte.MAX_VALUE);
+            OpeningBook book = new OpeningBook(spec,
+                    new String(name, StandardCharsets.UTF_8), buffer.slice());
+            if (book.nodeCount == 0
+                    || book.nodes.remaining() % book.stride != 0) {
+                throw new IOException(file + " is truncated.");
+            }
+            return book;
+        } catch (RuntimeException ex) {
+            throw new IOException(file + " is not a valid opening book.", ex);
+        }
+    }
+
+    /**
+     * Computes the decision tree of a strategy and writes it to a file.
+     * Computing the complete tree may take long for large code spaces, since
+     * every reachable position is searched once; {@code maxDepth} limits the
+     * number of moves covered.
+     *
+     * @param spec
+     *            dimensions of the game, the number of moves is ignored
+     * @param strategy
+     *            a deterministic strategy
+     * @param maxDepth
+     *            maximum number of moves in the book
+     * @param file
+     *            file to write, replaced if it exists
+     * @return number of nodes written
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static int write(GameSpec spec, GuessStrategy strategy,
+            int maxDepth, Path file) throws IOException {
+        final int won = spec.pack(spec.getSlots(), 0);
+        final byte[] name = strategy.getName().getBytes(
+                StandardCharsets.UTF_8);
+        int nodeCount = 1;
+        try (OutputStream stream = Files.newOutputStream(file);
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeByte(spec.getColors());
+            out.writeByte(spec.getSlots());
+            out.writeShort(name.length);
+            out.write(name);
+
+            // Children get their indices when they are queued, which is the
+            // order they are written in
+            Deque<Pending> queue = new ArrayDeque<>();
+            queue.add(new Pending(new PossibilityList(spec), 1));
+            while (!queue.isEmpty()) {
+                Pending node = queue.remove();
+                int guess = strategy.nextGuess(node.candidates);
+                out.writeInt(guess);
+                SurvivorList[] parts =
+                        SurvivorList.partition(node.candidates, guess);
+                for (int r = 0; r < parts.length; r++) {
+                    int count = parts[r].count();
+                    // A part as large as its parent would never end
+                    if (r == won || count == 0 || node.depth == maxDepth
+                            || count == node.candidates.count()) {
+                        out.writeInt(NO_NODE);
+                    } else if (nodeCount == Integer.MAX_VALUE) {
+                        throw new IOException("Book has too many nodes.");
+                    } else {
+                        queue.add(new Pending(parts[r], node.depth + 1));
+                        out.writeInt(nodeCount++);
+                    }
+                }
+            }
+        }
+        return nodeCount;
+    }
+
+    /**
+     * Returns the number of colors and slots the book was computed for. The
+     * number of moves is meaningless.
+     *
+     * @return dimensions of the game
+     */
+    public GameSpec getSpec() {
+        return spec;
+    }
+
+    /**
+     * Returns the name of the strategy the book was computed with.
+     *
+     * @return name of the strategy
+     */
+    public String getStrategyName() {
+        return strategyName;
+    }
+
+    /**
+     * Returns the number of positions in the book.
+     *
+     * @return number of nodes
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the guess of a node.
+     *
+     * @param node
+     *            index of the node, 0 for the first move
+     * @return index of the color code to guess
+     */
+    int guess(int node) {
+        return nodes.getInt(node * stride);
+    }
+
+    /**
+     * Returns the node that follows a rating of the guess of a node.
+     *
+     * @param node
+     *            index of the node
+     * @param packedRating
+     *            rating of the guess
+     * @return index of the next node or {@value #NO_NODE} if the book ends
+     */
+    int child(int node, int packedRating) {
+        return nodes.getInt(node * stride + (1 + packedRating)
+                * Integer.BYTES);
+    }
+
+    @Override
+    public String toString() {
+        return "Opening book of " + strategyName + " for " + spec.getColors()
+                + " colors and " + spec.getSlots() + " slots, " + nodeCount
+                + " nodes";
+    }
+}
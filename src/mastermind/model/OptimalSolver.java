@@ -0,0 +1,603 @@
+package mastermind.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Computes the strategy that minimizes the expected number of moves, taken
+ * over all secrets, optionally within a maximum number of moves. The search
+ * is an exhaustive branch and bound:
+ * <ul>
+ * <li>Colors that appear in no guess so far are interchangeable, so of the
+ * guesses that only differ in these colors just one is searched. Before the
+ * first move the slots are interchangeable as well.</li>
+ * <li>Every candidate set gets a lower bound: each guess can solve at most
+ * one secret and split the others into at most as many parts as there are
+ * other ratings. Guesses are searched in the order of their bounds and
+ * searching stops as soon as a bound is no better than the best solution.
+ * </li>
+ * <li>Results of large candidate sets are memoized, exact ones as well as
+ * lower bounds found by failed searches.</li>
+ * </ul>
+ * The parts of a guess near the top of the tree are solved in parallel on the
+ * common fork/join pool. The result does not depend on the number of threads.
+ * Feasible for small code spaces only; 6 colors and 4 slots take minutes on a
+ * multi-core machine.
+ */
+public final class OptimalSolver {
+
+    /**
+     * Name of the strategy of a solution.
+     */
+    public static final String NAME = "optimal";
+
+    /**
+     * Value of unsolvable candidate sets. Small enough to be added up.
+     */
+    private static final int INFINITE = Integer.MAX_VALUE / 4;
+
+    /**
+     * Candidate sets with at least this many codes are memoized.
+     */
+    private static final int MEMO_MIN_SIZE = 6;
+
+    /**
+     * Parts of guesses in this many levels below the root are solved in
+     * parallel.
+     */
+    private static final int PARALLEL_LEVELS = 2;
+
+    /**
+     * Candidate sets smaller than this are solved sequentially.
+     */
+    private static final int PARALLEL_MIN_SIZE = 32;
+
+    /**
+     * Largest number of colors, so the colors of a guess fit into a long.
+     */
+    private static final int MAX_COLORS = Long.SIZE - 1;
+
+    /**
+     * The optimal total of a candidate set and the guess that achieves it,
+     * or a lower bound if the search was cut off.
+     */
+    private static final class Outcome {
+
+        private final int total;
+        private final int guess;
+
+        private Outcome(int total, int guess) {
+            this.total = total;
+            this.guess = guess;
+        }
+
+        private boolean isExact() {
+            return guess >= 0;
+        }
+    }
+
+    /**
+     * A candidate set and the number of moves left to solve it.
+     */
+    private static final class Position {
+
+        private final int[] codes;
+        private final int movesLeft;
+        private final int hash;
+
+        private Position(int[] codes, int movesLeft) {
+            this.codes = codes;
+            this.movesLeft = movesLeft;
+            this.hash = Arrays.hashCode(codes) * 31 + movesLeft;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Position)) {
+                return false;
+            }
+            Position other = (Position) obj;
+            return movesLeft == other.movesLeft
+                    && Arrays.equals(codes, other.codes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Solves one part of a guess.
+     */
+    private final class PartTask extends RecursiveTask<Outcome> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] codes;
+        private final long usedColors;
+        private final int movesLeft;
+        private final int bound;
+        private final int level;
+
+        private PartTask(int[] codes, long usedColors, int movesLeft,
+                int bound, int level) {
+            this.codes = codes;
+            this.usedColors = usedColors;
+            this.movesLeft = movesLeft;
+            this.bound = bound;
+            this.level = level;
+        }
+
+        @Override
+        protected Outcome compute() {
+            return solve(codes, usedColors, movesLeft, bound, level);
+        }
+    }
+
+    /**
+     * The decisions of the optimal strategy, one per candidate set that can
+     * come up. Replays the solution as a strategy and can be written as an
+     * opening book.
+     */
+    public static final class Solution implements GuessStrategy {
+
+        private final GameSpec spec;
+        private final Map<Position, Integer> guesses;
+        private final int totalMoves;
+        private final int maxMoves;
+
+        private Solution(GameSpec spec, Map<Position, Integer> guesses,
+                int totalMoves, int maxMoves) {
+            this.spec = spec;
+            this.guesses = guesses;
+            this.totalMoves = totalMoves;
+            this.maxMoves = maxMoves;
+        }
+
+        @Override
+        public String getName() {
+            return NAME;
+        }
+
+        /**
+         * Looks the guess up. Candidate sets the solution does not know, for
+         * example of another code space, get the first candidate.
+         */
+        @Override
+        public int nextGuess(CandidateSet candidates) {
+            if (candidates.getSpec().codeSpaceKey() != spec.codeSpaceKey()) {
+                return candidates.first();
+            }
+            int[] codes = new int[candidates.count()];
+            candidates.copyTo(codes);
+            Integer guess = guesses.get(new Position(codes, 0));
+            return guess == null ? candidates.first() : guess;
+        }
+
+        /**
+         * Returns the sum of the moves needed for every secret.
+         *
+         * @return total number of moves
+         */
+        public int getTotalMoves() {
+            return totalMoves;
+        }
+
+        /**
+         * Returns the average number of moves over all secrets.
+         *
+         * @return expected number of moves
+         */
+        public double getExpectedMoves() {
+            return (double) totalMoves / spec.getCodeCount();
+        }
+
+        /**
+         * Returns the number of moves needed for the hardest secret.
+         *
+         * @return maximum number of moves
+         */
+        public int getMaxMoves() {
+            return maxMoves;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d moves in total, %.4f on average, %d at "
+                    + "most", totalMoves, getExpectedMoves(), maxMoves);
+        }
+    }
+
+    private final GameSpec spec;
+    private final int maxMoves;
+    private final Consumer<String> progress;
+    private final RatingEngine engine;
+    private final byte[] digits;
+    private final int branching;
+    private final int won;
+    private final Map<Position, Outcome> memo = new ConcurrentHashMap<>();
+    private final LongAdder nodes = new LongAdder();
+    private long start;
+
+    /**
+     * Constructs a solver.
+     *
+     * @param spec
+     *            dimensions of the game, the number of moves bounds the
+     *            moves of the solution
+     * @param progress
+     *            receives a message whenever a guess near the top of the tree
+     *            is done, may be called from several threads
+     * @throws IllegalArgumentException
+     *             if there are more than {@value #MAX_COLORS} colors
+     */
+    public OptimalSolver(GameSpec spec, Consumer<String> progress) {
+        if (spec.getColors() > MAX_COLORS) {
+            throw new IllegalArgumentException(
+                    "Solver supports at most " + MAX_COLORS + " colors.");
+        }
+        this.spec = spec;
+        this.maxMoves = spec.getMaxMoves();
+        this.progress = progress;
+        this.engine = RatingEngine.forSpec(spec);
+        final int slots = spec.getSlots();
+        this.digits = new byte[spec.getCodeCount() * slots];
+        for (int code = 0; code < spec.getCodeCount(); code++) {
+            int rest = code;
+            for (int i = slots - 1; i >= 0; i--) {
+                digits[code * slots + i] = (byte) (rest % spec.getColors());
+                rest /= spec.getColors();
+            }
+        }
+        // Achievable ratings other than all black
+        this.branching = (slots + 1) * (slots + 2) / 2 - 2;
+        this.won = spec.pack(slots, 0);
+    }
+
+    /**
+     * Searches the optimal strategy.
+     *
+     * @return the solution, or null if the secrets cannot all be found within
+     *         the maximum number of moves
+     */
+    public Solution solve() {
+        start = System.nanoTime();
+        final int[] all = new int[spec.getCodeCount()];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+        }
+        final Outcome root = ForkJoinPool.commonPool().invoke(
+                new PartTask(all, 0, maxMoves, INFINITE, 0));
+        if (!root.isExact() || root.total >= INFINITE) {
+            return null;
+        }
+        progress.accept(String.format("Optimum %d moves, %d nodes, %.1f s",
+                root.total, getNodeCount(), elapsedSeconds()));
+
+        final Map<Position, Integer> guesses = new ConcurrentHashMap<>();
+        final int depth = record(all, 0, maxMoves, guesses);
+        return new Solution(spec, guesses, root.total, depth);
+    }
+
+    /**
+     * Returns the number of candidate sets searched so far.
+     *
+     * @return number of nodes
+     */
+    public long getNodeCount() {
+        return nodes.sum();
+    }
+
+    /**
+     * Stores the guesses of the optimal strategy for a candidate set and all
+     * that follow. Mostly served by the memo, small sets are searched again.
+     *
+     * @return number of moves needed for the hardest secret
+     */
+    private int record(int[] codes, long usedColors, int movesLeft,
+            Map<Position, Integer> guesses) {
+        final Outcome outcome = solve(codes, usedColors, movesLeft, INFINITE,
+                PARALLEL_LEVELS);
+        guesses.put(new Position(codes, 0), outcome.guess);
+        int depth = 1;
+        for (int[] part : split(codes, outcome.guess)) {
+            if (part != null) {
+                depth = Math.max(depth, 1 + record(part,
+                        usedColors | colorsOf(outcome.guess), movesLeft - 1,
+                        guesses));
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Searches the best guess for a candidate set.
+     *
+     * @param codes
+     *            candidates in ascending order
+     * @param usedColors
+     *            colors of the guesses so far, one bit per color
+     * @param movesLeft
+     *            number of moves to find every candidate in
+     * @param bound
+     *            the search may stop once it knows the total is not below
+     * @param level
+     *            number of guesses so far
+     * @return the best guess with its total number of moves, or a lower bound
+     *         of at least {@code bound} with a guess of -1
+     */
+    private Outcome solve(int[] codes, long usedColors, int movesLeft,
+            int bound, int level) {
+        nodes.increment();
+        final int n = codes.length;
+        if (n == 1 || n == 2) {
+            // Guess one, then the other
+            int total = movesLeft >= n ? 2 * n - 1 : INFINITE;
+            return total < bound ? new Outcome(total, codes[0])
+                    : new Outcome(Math.max(total, bound), -1);
+        }
+        final int nodeBound = lowerBound(n, movesLeft);
+        if (nodeBound >= bound) {
+            return new Outcome(nodeBound, -1);
+        }
+        Position position = null;
+        if (n >= MEMO_MIN_SIZE) {
+            position = new Position(codes, movesLeft);
+            Outcome known = memo.get(position);
+            if (known != null && (known.isExact() || known.total >= bound)) {
+                return known;
+            }
+        }
+
+        int best = bound;
+        int bestGuess = -1;
+        // Candidates first: often one of them reaches the bound of the node,
+        // then no other guess has to be looked at
+        for (int phase = 0; phase < 2 && best > nodeBound; phase++) {
+            for (int[] ranked : rankGuesses(codes, usedColors, movesLeft,
+                    level == 0, phase == 0)) {
+                final int guessBound = ranked[0];
+                final int guess = ranked[1];
+                if (guessBound >= best) {
+                    break;
+                }
+                final int total = solveGuess(codes, usedColors, movesLeft,
+                        best, level, guess, guessBound);
+                final boolean improved = total < best;
+                if (improved) {
+                    best = total;
+                    bestGuess = guess;
+                }
+                if (level == 0) {
+                    progress.accept(String.format("Guess %s: %s, %d nodes, "
+                            + "%.1f s", ColorCode.of(spec, guess),
+                            improved ? total : "no better",
+                            getNodeCount(), elapsedSeconds()));
+                }
+                if (best == nodeBound) {
+                    break;
+                }
+            }
+        }
+
+        final Outcome outcome = bestGuess >= 0
+                ? new Outcome(best, bestGuess)
+                : new Outcome(Math.max(bound, nodeBound), -1);
+        if (position != null) {
+            // Another thread may have solved the same set, keep what is known
+            // best
+            memo.merge(position, outcome, (old, found) -> old.isExact()
+                    || !found.isExact() && old.total > found.total ? old
+                            : found);
+        }
+        return outcome;
+    }
+
+    /**
+     * Computes the total of a guess, if it is below {@code best}.
+     *
+     * @return the total, or at least {@code best}
+     */
+    private int solveGuess(int[] codes, long usedColors, int movesLeft,
+            int best, int level, int guess, int guessBound) {
+        final int[][] parts = split(codes, guess);
+        final long colors = usedColors | colorsOf(guess);
+        // Largest parts first, they decide most
+        Arrays.sort(parts, (a, b) -> (b == null ? 0 : b.length)
+                - (a == null ? 0 : a.length));
+
+        if (level < PARALLEL_LEVELS && codes.length >= PARALLEL_MIN_SIZE) {
+            final List<PartTask> tasks = new ArrayList<>();
+            for (int[] part : parts) {
+                if (part != null) {
+                    int others = guessBound
+                            - lowerBound(part.length, movesLeft - 1);
+                    tasks.add(new PartTask(part, colors, movesLeft - 1,
+                            best - others, level + 1));
+                }
+            }
+            // Parts that cannot be solved count as INFINITE, so the sum
+            // needs a long
+            long total = codes.length;
+            for (PartTask task : ForkJoinTask.invokeAll(tasks)) {
+                total += task.join().total;
+                if (total >= best) {
+                    for (PartTask other : tasks) {
+                        other.cancel(false);
+                    }
+                    return best;
+                }
+            }
+            return (int) total;
+        }
+
+        int total = codes.length;
+        int restBound = guessBound - codes.length;
+        for (int[] part : parts) {
+            if (part == null) {
+                break;
+            }
+            restBound -= lowerBound(part.length, movesLeft - 1);
+            Outcome outcome = solve(part, colors, movesLeft - 1,
+                    best - total - restBound, level + 1);
+            total += outcome.total;
+            if (total + restBound >= best) {
+                return best;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the guesses worth searching with their lower bounds, best
+     * first. Guesses that do not split the candidates are left out.
+     *
+     * @param consistent
+     *            whether to rank the candidates or all other color codes
+     * @return pairs of bound and guess
+     */
+    private int[][] rankGuesses(int[] codes, long usedColors, int movesLeft,
+            boolean isRoot, boolean consistent) {
+        final int n = codes.length;
+        final int count = consistent ? n : spec.getCodeCount();
+        final int[] histogram = new int[spec.getNumberOutcomes()];
+        final List<int[]> ranked = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final int guess = consistent ? codes[i] : i;
+            if (!isCanonical(guess, usedColors, isRoot)) {
+                continue;
+            }
+            Arrays.fill(histogram, 0);
+            engine.countAll(guess, codes, n, histogram);
+            if (!consistent && histogram[won] > 0) {
+                continue; // Ranked with the candidates
+            }
+            int bound = n;
+            boolean splits = true;
+            for (int r = 0; r < histogram.length && bound < INFINITE; r++) {
+                if (r != won && histogram[r] > 0) {
+                    splits &= histogram[r] < n;
+                    bound += lowerBound(histogram[r], movesLeft - 1);
+                }
+            }
+            if (splits && bound < INFINITE) {
+                ranked.add(new int[] {bound, guess });
+            }
+        }
+        ranked.sort((a, b) -> a[0] != b[0] ? a[0] - b[0] : a[1] - b[1]);
+        return ranked.toArray(new int[ranked.size()][]);
+    }
+
+    /**
+     * Splits candidates by their rating of a guess.
+     *
+     * @return candidates per packed rating, null for empty parts and all
+     *         black
+     */
+    private int[][] split(int[] codes, int guess) {
+        final int[] sizes = new int[spec.getNumberOutcomes()];
+        final byte[] ratings = new byte[codes.length];
+        engine.rateAll(guess, codes, codes.length, ratings);
+        for (byte rating : ratings) {
+            sizes[rating & 0xFF]++;
+        }
+        final int[][] parts = new int[sizes.length][];
+        for (int r = 0; r < sizes.length; r++) {
+            if (r != won && sizes[r] > 0) {
+                parts[r] = new int[sizes[r]];
+            }
+            sizes[r] = 0;
+        }
+        for (int i = 0; i < codes.length; i++) {
+            int rating = ratings[i] & 0xFF;
+            if (parts[rating] != null) {
+                parts[rating][sizes[rating]++] = codes[i];
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Computes the least total number of moves {@code n} secrets can need:
+     * the first guess finds at most one, each further level at most
+     * {@code branching} times as many as the level before.
+     *
+     * @return lower bound, {@link #INFINITE} if the moves are not enough
+     */
+    private int lowerBound(int n, int movesLeft) {
+        int total = 0;
+        long width = 1;
+        int left = n;
+        for (int level = 1; left > 0; level++) {
+            if (level > movesLeft) {
+                return INFINITE;
+            }
+            int solved = (int) Math.min(left, width);
+            total += level * solved;
+            left -= solved;
+            width = Math.min(width * branching, n);
+        }
+        return total;
+    }
+
+    /**
+     * Checks whether a guess is the representative of the guesses that only
+     * differ by unused colors: new colors have to be the lowest unused ones,
+     * in the order they first appear. Before the first move, where the slots
+     * are interchangeable too, the colors have to be ascending and a color may
+     * not appear more often than the one before.
+     */
+    private boolean isCanonical(int guess, long usedColors, boolean isRoot) {
+        final int slots = spec.getSlots();
+        long introduced = usedColors;
+        int previous = 0;
+        int run = 0;
+        int previousRun = slots;
+        for (int i = 0; i < slots; i++) {
+            int color = digits[guess * slots + i];
+            if ((introduced & 1L << color) == 0) {
+                if (color != Long.numberOfTrailingZeros(~introduced)) {
+                    return false;
+                }
+                introduced |= 1L << color;
+            }
+            if (isRoot) {
+                if (color < previous) {
+                    return false;
+                } else if (color == previous) {
+                    run++;
+                } else {
+                    if (run > previousRun) {
+                        return false;
+                    }
+                    previousRun = run;
+                    run = 1;
+                }
+                previous = color;
+            }
+        }
+        return !isRoot || run <= previousRun;
+    }
+
+    private long colorsOf(int guess) {
+        final int slots = spec.getSlots();
+        long colors = 0;
+        for (int i = 0; i < slots; i++) {
+            colors |= 1L << digits[guess * slots + i];
+        }
+        return colors;
+    }
+
+    private double elapsedSeconds() {
+        return (System.nanoTime() - start) / 1e9;
+    }
+}
@@ -0,0 +1,97 @@
+package mastermind.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * For every guess and every rating, the set of color codes that would give
+ * this rating to the guess. Filtering the candidates by a rating is then one
+ * bitwise AND of this set into the candidates. There is one index per code
+ * space, built when it is needed for the first time and shared by all games.
+ * Code spaces whose index would need more than {@value #MAX_BYTES} bytes get
+ * none.
+ */
+final class PartitionIndex {
+
+    /**
+     * Memory budget of one index.
+     */
+    static final long MAX_BYTES = 16L << 20;
+
+    private static final ConcurrentMap<Integer, PartitionIndex> INDICES =
+            new ConcurrentHashMap<>();
+
+    /**
+     * The index returned last, found without boxing a key as long as one
+     * code space is played.
+     */
+    private static volatile PartitionIndex last;
+
+    private final int codeSpaceKey;
+    private final int numberOutcomes;
+    private final PossibilityList[] index;
+
+    private PartitionIndex(GameSpec spec) {
+        codeSpaceKey = spec.codeSpaceKey();
+        final int size = spec.getCodeCount();
+        final RatingEngine engine = RatingEngine.forSpec(spec);
+        numberOutcomes = spec.getNumberOutcomes();
+        index = new PossibilityList[size * numberOutcomes];
+        final int[] codes = new int[size];
+        for (int code = 0; code < size; code++) {
+            codes[code] = code;
+        }
+        final byte[] ratings = new byte[size];
+        for (int guess = 0; guess < size; guess++) {
+            engine.rateAll(guess, codes, size, ratings);
+            for (int code = 0; code < size; code++) {
+                int i = guess * numberOutcomes + (ratings[code] & 0xFF);
+                if (index[i] == null) {
+                    index[i] = new PossibilityList(spec, false);
+                }
+                index[i].add(code);
+            }
+        }
+    }
+
+    /**
+     * Returns the index for the code space of {@code spec}, building it if
+     * necessary.
+     *
+     * @param spec
+     *            dimensions of the game
+     * @return shared index, {@code null} if the code space is too large
+     */
+    static PartitionIndex forSpec(GameSpec spec) {
+        // Ratings with black + white <= slots, except all but one black
+        final long slots = spec.getSlots();
+        final long outcomes = (slots + 1) * (slots + 2) / 2 - 1;
+        final long codes = spec.getCodeCount();
+        if (codes * outcomes * ((codes + Long.SIZE - 1) / Long.SIZE)
+                * Long.BYTES > MAX_BYTES) {
+            return null;
+        }
+        final PartitionIndex recent = last;
+        if (recent != null && recent.codeSpaceKey == spec.codeSpaceKey()) {
+            return recent;
+        }
+        final PartitionIndex index = INDICES.computeIfAbsent(
+                spec.codeSpaceKey(), key -> new PartitionIndex(spec));
+        last = index;
+        return index;
+    }
+
+    /**
+     * Returns the color codes that would give the specified rating to
+     * {@code guess}. The result is shared and must not be modified.
+     *
+     * @param guess
+     *            index of the guess
+     * @param packedRating
+     *            rating as packed by {@code GameSpec.pack}
+     * @return the consistent color codes, {@code null} if there are none
+     */
+    PossibilityList consistentWith(int guess, int packedRating) {
+        return index[guess * numberOutcomes + packedRating];
+    }
+}
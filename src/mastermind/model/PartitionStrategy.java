@@ -0,0 +1,244 @@
+package mastermind.model;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Base for strategies that rate every color code by the way it would
+ * partition the remaining candidates. For each possible guess the candidates
+ * are counted per rating they would give, and the guess whose histogram gets
+ * the lowest score wins. Ties are broken deterministically: consistent codes
+ * are preferred, then the lowest index.
+ * <p>
+ * The guesses are scored in parallel on the common fork/join pool. Since the
+ * tie-breaking only depends on score, consistency and index, the result does
+ * not depend on the number of threads.
+ * <p>
+ * If scoring every color code would need more than {@value #MAX_WORK} rating
+ * lookups, only the candidates themselves are scored, as many as the budget
+ * allows.
+ * <p>
+ * With more than {@value #MAX_CANDIDATES} candidates the first candidate is
+ * guessed, as the first consistent strategy does. Scoring needs a copy of
+ * all candidates, which would take gigabytes for the largest code spaces,
+ * and the budget would allow only a few guesses to be scored anyway.
+ * <p>
+ * Given the {@link Symmetry} of the game, only the representatives of the
+ * guesses are scored. Every guess scores like its representative, which is
+ * the lowest index of its class and consistent if the guess is, so the
+ * tie-breaking picks the same guess as without the symmetry.
+ * <p>
+ * Interrupting the calling thread abandons the scoring: the workers stop after
+ * the guess they are scoring and {@link #nextGuess} throws a
+ * {@link CancellationException}.
+ */
+abstract class PartitionStrategy implements GuessStrategy {
+
+    /**
+     * Number of rating lookups below which a range of guesses is scored
+     * sequentially.
+     */
+    private static final int SEQUENTIAL_WORK = 1 << 15;
+
+    /**
+     * Maximum number of rating lookups per move.
+     */
+    private static final long MAX_WORK = 1L << 24;
+
+    /**
+     * Largest number of candidates that are scored, copied into 16 MB.
+     */
+    static final int MAX_CANDIDATES = 1 << 22;
+
+    private static final ThreadLocal<int[]> HISTOGRAMS =
+            new ThreadLocal<>();
+
+    /**
+     * The best guess of a range of guesses.
+     */
+    private static final class Choice {
+
+        private final int guess;
+        private final double score;
+        private final boolean consistent;
+
+        private Choice(int guess, double score, boolean consistent) {
+            this.guess = guess;
+            this.score = score;
+            this.consistent = consistent;
+        }
+
+        private boolean isBetterThan(Choice other) {
+            if (other == null || score != other.score) {
+                return other == null || score < other.score;
+            } else if (consistent != other.consistent) {
+                return consistent;
+            } else {
+                return guess < other.guess;
+            }
+        }
+    }
+
+    /**
+     * Scores a range of guesses, splitting it while it is large.
+     */
+    private final class ScoringTask extends RecursiveTask<Choice> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Scoring scoring;
+        private final int from;
+        private final int to;
+
+        private ScoringTask(Scoring scoring, int from, int to) {
+            this.scoring = scoring;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Choice compute() {
+            if (to - from <= scoring.grain) {
+                return scoreRange(scoring, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            ScoringTask left = new ScoringTask(scoring, from, mid);
+            left.fork();
+            Choice right = new ScoringTask(scoring, mid, to).compute();
+            Choice leftChoice = left.join();
+            return leftChoice.isBetterThan(right) ? leftChoice : right;
+        }
+    }
+
+    /**
+     * Everything the scoring of one move needs.
+     */
+    private static final class Scoring {
+
+        private final RatingEngine engine;
+        private final CandidateSet candidates;
+        private final int[] codes;
+        private final int[] guesses;
+        private final int grain;
+        private final Thread caller = Thread.currentThread();
+
+        private Scoring(CandidateSet candidates, int[] codes, int[] guesses) {
+            this.engine = RatingEngine.forSpec(candidates.getSpec());
+            this.candidates = candidates;
+            this.codes = codes;
+            this.guesses = guesses;
+            this.grain = Math.max(1, SEQUENTIAL_WORK / codes.length);
+        }
+
+        private int guess(int i) {
+            return guesses == null ? i : guesses[i];
+        }
+    }
+
+    @Override
+    public int nextGuess(CandidateSet candidates) {
+        return nextGuess(candidates, Symmetry.none(candidates.getSpec()));
+    }
+
+    @Override
+    public int nextGuess(CandidateSet candidates, Symmetry symmetry) {
+        final int count = candidates.count();
+        if (count <= 2 || count > MAX_CANDIDATES) {
+            // Any candidate is as good as it gets, or scoring is too costly
+            return candidates.first();
+        }
+        final int[] codes = new int[count];
+        candidates.copyTo(codes);
+
+        // null means every color code
+        int[] guesses = null;
+        int total = candidates.getSpec().getCodeCount();
+        if ((long) total * count > MAX_WORK) {
+            total = (int) Math.max(1, Math.min(count, MAX_WORK / count));
+            guesses = Arrays.copyOf(codes, total);
+        }
+        if (!symmetry.isTrivial()) {
+            guesses = symmetry.representatives(guesses);
+            total = guesses.length;
+        }
+
+        final Scoring scoring = new Scoring(candidates, codes, guesses);
+        final Choice best;
+        if (total <= scoring.grain) {
+            best = scoreRange(scoring, 0, total);
+        } else {
+            best = ForkJoinPool.commonPool()
+                    .invoke(new ScoringTask(scoring, 0, total));
+        }
+        if (scoring.caller.isInterrupted()) {
+            throw new CancellationException("Scoring was interrupted.");
+        }
+        return best.guess;
+    }
+
+    /**
+     * Scores the partition of the candidates by a guess. Must not modify
+     * {@code histogram} and must be thread-safe.
+     *
+     * @param histogram
+     *            number of candidates per packed rating
+     * @param count
+     *            total number of candidates
+     * @return score, lower is better
+     */
+    abstract double score(int[] histogram, int count);
+
+    /**
+     * Counts the candidates per rating they would give to {@code guess}.
+     *
+     * @param engine
+     *            engine of the code space
+     * @param guess
+     *            index of the guess
+     * @param codes
+     *            indices of the candidates
+     * @param histogram
+     *            array to fill, its old content is discarded
+     * @return {@code histogram}
+     */
+    static int[] partition(RatingEngine engine, int guess, int[] codes,
+            int[] histogram) {
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = 0;
+        }
+        engine.countAll(guess, codes, codes.length, histogram);
+        return histogram;
+    }
+
+    private Choice scoreRange(Scoring scoring, int from, int to) {
+        final int numberOutcomes =
+                scoring.candidates.getSpec().getNumberOutcomes();
+        int[] histogram = HISTOGRAMS.get();
+        if (histogram == null || histogram.length != numberOutcomes) {
+            histogram = new int[numberOutcomes];
+            HISTOGRAMS.set(histogram);
+        }
+        final CandidateSet candidates = scoring.candidates;
+        final int[] codes = scoring.codes;
+        int best = -1;
+        double bestScore = Double.POSITIVE_INFINITY;
+        boolean bestIsConsistent = false;
+        for (int i = from; i < to && !scoring.caller.isInterrupted(); i++) {
+            int guess = scoring.guess(i);
+            double score = score(
+                    partition(scoring.engine, guess, codes, histogram),
+                    codes.length);
+            // Guesses are visited in ascending order, so on a tie only
+            // consistency can make a later guess better
+            if (score < bestScore || score == bestScore && !bestIsConsistent
+                    && candidates.contains(guess)) {
+                best = guess;
+                bestScore = score;
+                bestIsConsistent = candidates.contains(guess);
+            }
+        }
+        return new Choice(best, bestScore, bestIsConsistent);
+    }
+}
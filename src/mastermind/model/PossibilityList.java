@@ -1,54 +1,58 @@
 package mastermind.model;
 
-import static mastermind.model.MastermindGame.NUMBER_COLORS;
-import static mastermind.model.MastermindGame.NUMBER_SLOTS;
-
 /**
- * A simple Class to make a boolean array abstract. For each ColorCode it
- * contains one boolean that indicates whether it can match the secret.
+ * A bitset over all color codes. For each ColorCode it contains one bit that
+ * indicates whether it can match the secret. The bits are stored in words of
+ * a {@code long[]}, so searching and counting work on 64 codes at once.
  */
-final class PossibilityList {
-
-    private static int totalNumberCombis = (int) Math.pow(NUMBER_COLORS,
-            NUMBER_SLOTS);
+final class PossibilityList implements CandidateSet {
 
-    private final boolean[] combis;
+    private static final int ADDRESS_BITS_PER_WORD = 6;
 
     /**
-     * Constructs a list where every Combination is possible.
+     * Number of words whose color codes are rated in one batch.
      */
-    public PossibilityList() {
-        combis = new boolean[totalNumberCombis];
-        for (int i = 0; i < combis.length; i++) {
-            combis[i] = true;
-        }
-    }
+    private static final int BATCH_WORDS =
+            RatingEngine.BATCH_SIZE / Long.SIZE;
+
+    private final GameSpec spec;
+    private final int totalNumberCombis;
+    private final long[] words;
 
     /**
-     * Returns the static saved number of all ColorCode Combinations.
+     * Constructs a list where every Combination is possible.
      *
-     * @return total number of combinations
+     * @param spec
+     *            dimensions of the game
      */
-    public static int getTotalNoCombis() {
-        return totalNumberCombis;
+    public PossibilityList(GameSpec spec) {
+        this(spec, true);
     }
 
     /**
-     * Every index {@code i} represents a ColorCode.
+     * Constructs a list where either every or no Combination is possible.
      *
-     * @param i
-     *            index
-     * @return corresponding ColorCode
+     * @param spec
+     *            dimensions of the game
+     * @param allPossible
+     *            true if every combination shall be possible
      */
-    public static ColorCode getColorCode(int i) {
-        ColorCode result = new ColorCode();
-        int remainder = i;
-
-        for (byte j = NUMBER_SLOTS - 1; j >= 0; j--) {
-            result.set(j, (byte) (remainder % NUMBER_COLORS));
-            remainder /= NUMBER_COLORS;
+    PossibilityList(GameSpec spec, boolean allPossible) {
+        this.spec = spec;
+        this.totalNumberCombis = spec.getCodeCount();
+        words = new long[wordIndex(totalNumberCombis - 1) + 1];
+        if (allPossible) {
+            for (int i = 0; i < words.length; i++) {
+                words[i] = -1L;
+            }
+            // Clear the bits beyond the last combination
+            words[words.length - 1] = -1L >>> -totalNumberCombis;
         }
-        return result;
+    }
+
+    @Override
+    public GameSpec getSpec() {
+        return spec;
     }
 
     /**
@@ -59,7 +63,12 @@ final class PossibilityList {
      * @return true if ColorCode is possible, otherwise false
      */
     public boolean combiIsPossible(int i) {
-        return combis[i];
+        return (words[wordIndex(i)] & (1L << i)) != 0;
+    }
+
+    @Override
+    public boolean contains(int code) {
+        return combiIsPossible(code);
     }
 
     /**
@@ -69,6 +78,144 @@ final class PossibilityList {
      *            Index representing color code
      */
     public void remove(int i) {
-        combis[i] = false;
+        words[wordIndex(i)] &= ~(1L << i);
+    }
+
+    /**
+     * Memorizes that the specified ColorCode is possible.
+     *
+     * @param i
+     *            Index representing color code
+     */
+    void add(int i) {
+        words[wordIndex(i)] |= 1L << i;
+    }
+
+    /**
+     * Finds the next possible color code, starting at {@code from}.
+     *
+     * @param from
+     *            index to start the search at (inclusive)
+     * @return index of the next possible color code or -1 if there is none
+     */
+    public int nextPossible(int from) {
+        if (from >= totalNumberCombis) {
+            return -1;
+        }
+        int u = wordIndex(from);
+        long word = words[u] & (-1L << from);
+        while (word == 0) {
+            if (++u == words.length) {
+                return -1;
+            }
+            word = words[u];
+        }
+        return (u << ADDRESS_BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
+    }
+
+    @Override
+    public int count() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    @Override
+    public int first() {
+        return nextPossible(0);
+    }
+
+    /**
+     * {@inheritDoc} If the code space has a {@code PartitionIndex}, this
+     * intersects with its precomputed set of consistent color codes.
+     */
+    @Override
+    public void retain(int guess, int packedRating) {
+        PartitionIndex index = PartitionIndex.forSpec(spec);
+        if (index == null) {
+            retainRated(guess, packedRating);
+            return;
+        }
+        PossibilityList consistent =
+                index.consistentWith(guess, packedRating);
+        if (consistent == null) {
+            for (int i = 0; i < words.length; i++) {
+                words[i] = 0;
+            }
+        } else {
+            retainAll(consistent);
+        }
+    }
+
+    /**
+     * Rates the possible color codes in batches of {@value #BATCH_WORDS}
+     * words and removes those that do not give the rating.
+     */
+    private void retainRated(int guess, int packedRating) {
+        final RatingEngine engine = RatingEngine.forSpec(spec);
+        final int[] codes = RatingEngine.batchCodes();
+        final byte[] ratings = RatingEngine.batchRatings();
+        for (int from = 0; from < words.length; from += BATCH_WORDS) {
+            final int to = Math.min(words.length, from + BATCH_WORDS);
+            int n = 0;
+            for (int u = from; u < to; u++) {
+                long word = words[u];
+                while (word != 0) {
+                    codes[n++] = (u << ADDRESS_BITS_PER_WORD)
+                            + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            engine.rateAll(guess, codes, n, ratings);
+            for (int i = 0; i < n; i++) {
+                if ((ratings[i] & 0xFF) != packedRating) {
+                    remove(codes[i]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int copyTo(int[] dest) {
+        int n = 0;
+        for (int u = 0; u < words.length; u++) {
+            long word = words[u];
+            while (word != 0) {
+                dest[n++] = (u << ADDRESS_BITS_PER_WORD)
+                        + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Keeps only the color codes that are possible in both lists.
+     *
+     * @param other
+     *            list to intersect with
+     */
+    public void retainAll(PossibilityList other) {
+        for (int i = 0; i < words.length; i++) {
+            words[i] &= other.words[i];
+        }
+    }
+
+    /**
+     * Removes every color code that is possible in {@code other}.
+     *
+     * @param other
+     *            list of color codes to remove
+     */
+    public void removeAll(PossibilityList other) {
+        for (int i = 0; i < words.length; i++) {
+            words[i] &= ~other.words[i];
+        }
+    }
+
+    private static int wordIndex(int i) {
+        return i >> ADDRESS_BITS_PER_WORD;
     }
 }
@@ -2,14 +2,40 @@ package mastermind.model;
 
 /**
  * A Bean for the number of black and white spikes in the Mastermind Game.
+ * There are only a few distinct ratings per number of slots, so
+ * {@link #valueOf(GameSpec, int, int)} hands out shared instances instead of
+ * allocating new ones.
  */
 public final class Rating {
 
+    /**
+     * Shared instances per number of slots, indexed by packed rating. Fewer
+     * than 1600 in total.
+     */
+    private static final Rating[][] INTERNED =
+            new Rating[GameSpec.MAX_SLOTS + 1][];
+
+    static {
+        for (int slots = 1; slots <= GameSpec.MAX_SLOTS; slots++) {
+            INTERNED[slots] = new Rating[(slots + 1) * (slots + 1)];
+            for (int black = 0; black <= slots; black++) {
+                for (int white = 0; black + white <= slots; white++) {
+                    INTERNED[slots][black * (slots + 1) + white] =
+                            new Rating((byte) slots, (byte) black,
+                                    (byte) white);
+                }
+            }
+        }
+    }
+
+    private final byte slots;
     private final byte black;
     private final byte white;
+    private final int hash;
 
     /**
-     * Constructs an Object with a Number of black and white spikes.
+     * Constructs an Object with a Number of black and white spikes for the
+     * default game.
      *
      * @param black
      *            number of black spikes
@@ -17,13 +43,85 @@ public final class Rating {
      *            number of white spikes
      */
     public Rating(byte black, byte white) {
-        if (black < 0 || white < 0
-                || black + white > MastermindGame.NUMBER_SLOTS) {
+        this(GameSpec.DEFAULT, black, white);
+    }
+
+    /**
+     * Constructs an Object with a Number of black and white spikes.
+     *
+     * @param spec
+     *            dimensions of the game
+     * @param black
+     *            number of black spikes
+     * @param white
+     *            number of white spikes
+     */
+    public Rating(GameSpec spec, byte black, byte white) {
+        if (black < 0 || white < 0 || black + white > spec.getSlots()) {
 
             throw new IllegalArgumentException("Invalid number of spikes");
         }
+        this.slots = spec.getSlots();
+        this.black = black;
+        this.white = white;
+        this.hash = computeHash();
+    }
+
+    private Rating(byte slots, byte black, byte white) {
+        this.slots = slots;
         this.black = black;
         this.white = white;
+        this.hash = computeHash();
+    }
+
+    /**
+     * Returns the shared rating of the default game with the specified
+     * number of black and white spikes.
+     *
+     * @param black
+     *            number of black spikes
+     * @param white
+     *            number of white spikes
+     * @return rating, the same instance for the same spikes
+     */
+    public static Rating valueOf(int black, int white) {
+        return valueOf(GameSpec.DEFAULT, black, white);
+    }
+
+    /**
+     * Returns the shared rating with the specified number of black and white
+     * spikes. Ratings only depend on the number of slots, so games of the
+     * same number of slots share them.
+     *
+     * @param spec
+     *            dimensions of the game
+     * @param black
+     *            number of black spikes
+     * @param white
+     *            number of white spikes
+     * @return rating, the same instance for the same slots and spikes
+     * @throws IllegalArgumentException
+     *             if the number of spikes is invalid
+     */
+    public static Rating valueOf(GameSpec spec, int black, int white) {
+        if (black < 0 || white < 0 || black + white > spec.getSlots()) {
+            throw new IllegalArgumentException("Invalid number of spikes");
+        }
+        return ofPacked(spec, spec.pack(black, white));
+    }
+
+    /**
+     * Returns the shared rating of a packed rating.
+     *
+     * @param spec
+     *            dimensions of the game
+     * @param packedRating
+     *            rating as packed by {@code GameSpec.pack}, with no more
+     *            spikes than slots
+     * @return rating
+     */
+    static Rating ofPacked(GameSpec spec, int packedRating) {
+        return INTERNED[spec.getSlots()][packedRating];
     }
 
     /**
@@ -60,31 +158,38 @@ public final class Rating {
      */
     @Override
     public boolean equals(final Object obj) {
-        if (obj == null) {
+        if (obj == this) {
+            return true;
+        } else if (obj == null) {
             return false;
         }
         if (getClass() != obj.getClass()) {
             return false;
         }
         final Rating other = (Rating) obj;
-        if (this.black != other.black) {
+        if (this.slots != other.slots || this.black != other.black) {
             return false;
         }
         return this.white == other.white;
     }
 
     /**
-     * Creates a hashCode that is the same for every equal Rating.
+     * Returns a hashCode that is the same for every equal Rating. It is
+     * computed once, when the rating is constructed.
      *
      * @return hashCode
      */
     @Override
     public int hashCode() {
+        return hash;
+    }
+
+    private int computeHash() {
         final int min = 3;
         final int multiplicator = 17;
         int hash = min;
         hash = multiplicator * hash + this.black;
-        hash = MastermindGame.NUMBER_SLOTS * hash + this.white;
+        hash = this.slots * hash + this.white;
         return hash;
     }
 
@@ -94,6 +199,6 @@ public final class Rating {
      * @return true if and only if the number of black spikes at its maximum.
      */
     public boolean isAllBlack() {
-        return black == MastermindGame.NUMBER_SLOTS;
+        return black == slots;
     }
 }
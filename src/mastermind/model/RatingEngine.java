@@ -0,0 +1,159 @@
+package mastermind.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Rates color codes identified by their index as used by
+ * {@code ColorCode.of(GameSpec, int)}. A rating is one packed
+ * value (see {@code GameSpec.pack(int, int)}). There is one engine per code
+ * space, created when it is needed for the first time and shared by all
+ * games.
+ */
+abstract class RatingEngine {
+
+    /**
+     * Number of color codes the candidate sets rate in one call.
+     */
+    static final int BATCH_SIZE = 1 << 12;
+
+    private static final ConcurrentMap<Integer, RatingEngine> ENGINES =
+            new ConcurrentHashMap<>();
+
+    /**
+     * The engine returned last, found without boxing a key as long as one
+     * code space is played.
+     */
+    private static volatile RatingEngine last;
+
+    /**
+     * Buffers of every thread for a batch, so filtering allocates nothing.
+     */
+    private static final ThreadLocal<int[]> BATCH_CODES =
+            ThreadLocal.withInitial(() -> new int[BATCH_SIZE]);
+    private static final ThreadLocal<byte[]> BATCH_RATINGS =
+            ThreadLocal.withInitial(() -> new byte[BATCH_SIZE]);
+
+    private final GameSpec spec;
+
+    /**
+     * Constructs an engine for the specified code space.
+     *
+     * @param spec
+     *            dimensions of the game
+     */
+    RatingEngine(GameSpec spec) {
+        this.spec = spec;
+    }
+
+    /**
+     * Returns the engine for the code space of {@code spec}. Small code spaces
+     * get a precomputed table, larger ones compute every rating: on packed
+     * words if there are at most {@value SwarRatingEngine#MAX_COLORS} colors,
+     * otherwise digit by digit. Mid-size code spaces keep the rows they rate
+     * in a {@link RatingMatrix}.
+     *
+     * @param spec
+     *            dimensions of the game
+     * @return shared engine
+     */
+    static RatingEngine forSpec(GameSpec spec) {
+        final RatingEngine recent = last;
+        if (recent != null
+                && recent.spec.codeSpaceKey() == spec.codeSpaceKey()) {
+            return recent;
+        }
+        final RatingEngine engine = ENGINES.computeIfAbsent(
+                spec.codeSpaceKey(), key -> create(spec));
+        last = engine;
+        return engine;
+    }
+
+    private static RatingEngine create(GameSpec spec) {
+        if (spec.getCodeCount() <= RatingTable.MAX_CODE_COUNT) {
+            return new RatingTable(spec);
+        }
+        RatingEngine compute = spec.getColors() <= SwarRatingEngine.MAX_COLORS
+                ? new SwarRatingEngine(spec)
+                : new DirectRatingEngine(spec);
+        return RatingMatrix.isTiled(spec)
+                ? RatingMatrix.createEngine(compute) : compute;
+    }
+
+    /**
+     * Returns the buffer of the current thread for the codes of a batch.
+     *
+     * @return array of {@value #BATCH_SIZE} indices
+     */
+    static int[] batchCodes() {
+        return BATCH_CODES.get();
+    }
+
+    /**
+     * Returns the buffer of the current thread for the ratings of a batch.
+     *
+     * @return array of {@value #BATCH_SIZE} packed ratings
+     */
+    static byte[] batchRatings() {
+        return BATCH_RATINGS.get();
+    }
+
+    /**
+     * Returns the dimensions of the game.
+     *
+     * @return spec
+     */
+    final GameSpec getSpec() {
+        return spec;
+    }
+
+    /**
+     * Rates {@code guess} with {@code secret} being the secret. Equivalent to
+     * {@code ColorCode.evaluate(ColorCode)} but without any allocation.
+     *
+     * @param secret
+     *            index of the secret
+     * @param guess
+     *            index of the guess
+     * @return packed rating
+     */
+    abstract int rate(int secret, int guess);
+
+    /**
+     * Rates one guess against many color codes. Engines override this with a
+     * loop that looks at the guess only once and makes no call per code.
+     *
+     * @param guess
+     *            index of the guess
+     * @param codes
+     *            indices of the color codes taken as secrets
+     * @param count
+     *            number of codes to rate, from the start of {@code codes}
+     * @param ratings
+     *            receives the packed rating of each code
+     */
+    void rateAll(int guess, int[] codes, int count, byte[] ratings) {
+        for (int i = 0; i < count; i++) {
+            ratings[i] = (byte) rate(codes[i], guess);
+        }
+    }
+
+    /**
+     * Counts the color codes per rating they give to a guess, like
+     * {@link #rateAll} but without storing the ratings.
+     *
+     * @param guess
+     *            index of the guess
+     * @param codes
+     *            indices of the color codes taken as secrets
+     * @param count
+     *            number of codes to rate, from the start of {@code codes}
+     * @param histogram
+     *            number of codes per packed rating, the counts are added
+     */
+    void countAll(int guess, int[] codes, int count, int[] histogram) {
+        for (int i = 0; i < count; i++) {
+            histogram[rate(codes[i], guess)]++;
+        }
+    }
+}
@@ -0,0 +1,522 @@
+package mastermind.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The ratings of every pair of color codes of a mid-size code space, computed
+ * lazily. A full table would be too large (1 GB for 8 colors and 5 slots),
+ * but the strategies keep rating the same guesses, so the rows of those
+ * guesses are kept.
+ * <p>
+ * A row, one guess against all color codes, is split into tiles of
+ * {@value #TILE_CODES} ratings. Tiles are computed when a batch of ratings
+ * needs them and kept in a least recently used cache with a memory budget,
+ * split into stripes like the {@link GuessCache}. Tiles a batch would barely
+ * use are not computed, and sparse batches are not looked up at all; those
+ * ratings are computed directly. If a spill directory is configured, evicted
+ * tiles are written to a memory-mapped file there and read back instead of
+ * being computed again. The whole file is mapped when the matrix is created,
+ * so reading a tile back takes no lock, and its channel is closed right away.
+ * <p>
+ * There is one matrix per code space of more than
+ * {@value RatingTable#MAX_CODE_COUNT} and at most {@value #MAX_CODE_COUNT}
+ * color codes, shared by all games. {@link #configure} sets the budget and
+ * the spill directory of matrices created afterwards.
+ */
+public final class RatingMatrix {
+
+    /**
+     * Memory budget of the tiles of one matrix if none is configured.
+     */
+    public static final long DEFAULT_BUDGET = 64L << 20;
+
+    /**
+     * Largest code space that gets a matrix. The spill file has one byte per
+     * pair of color codes, 16 GB at this size, but only the spilled tiles
+     * take disk space.
+     */
+    static final int MAX_CODE_COUNT = 1 << 17;
+
+    /**
+     * Number of ratings of a tile.
+     */
+    static final int TILE_CODES = 4096;
+
+    /**
+     * A tile is only computed for a batch that uses at least this many of its
+     * ratings.
+     */
+    private static final int MIN_TILE_USE = TILE_CODES / 8;
+
+    /**
+     * Batches with fewer codes per tile on average are computed directly,
+     * looking tiles up would cost more than computing.
+     */
+    private static final int MIN_AVERAGE_USE = TILE_CODES / 64;
+
+    private static final int STRIPES = 16;
+
+    /**
+     * Size of the regions the spill file is mapped in.
+     */
+    private static final long REGION_BYTES = 1L << 30;
+
+    private static long configuredBudget = DEFAULT_BUDGET;
+    private static Path configuredDirectory;
+
+    /**
+     * The engine of the code space, backed by the matrix.
+     */
+    private static final class Engine extends RatingEngine {
+
+        private final RatingMatrix matrix;
+
+        private Engine(RatingMatrix matrix) {
+            super(matrix.spec);
+            this.matrix = matrix;
+        }
+
+        @Override
+        int rate(int secret, int guess) {
+            // A single rating is cheaper to compute than to look up
+            return matrix.compute.rate(secret, guess);
+        }
+
+        @Override
+        void rateAll(int guess, int[] codes, int count, byte[] ratings) {
+            matrix.rateAll(guess, codes, count, ratings);
+        }
+
+        @Override
+        void countAll(int guess, int[] codes, int count, int[] histogram) {
+            matrix.countAll(guess, codes, count, histogram);
+        }
+    }
+
+    /**
+     * Identifies a tile by the guess and the index of the tile in its row.
+     * Lookups reuse a probe of their thread, so a hit boxes nothing.
+     */
+    private static final class TileKey {
+
+        private long key;
+
+        private TileKey(long key) {
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof TileKey && ((TileKey) obj).key == key;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(key);
+        }
+    }
+
+    /**
+     * One part of the cache with its own lock.
+     */
+    private final class Stripe extends LinkedHashMap<TileKey, byte[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private Stripe() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(
+                Map.Entry<TileKey, byte[]> eldest) {
+            if (size() > stripeCapacity) {
+                evictions.increment();
+                spill(eldest.getKey().key, eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private final GameSpec spec;
+    private final RatingEngine compute;
+    private final int codeCount;
+    private final int tilesPerRow;
+    private final int stripeCapacity;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final ThreadLocal<int[]> tileCodes =
+            ThreadLocal.withInitial(() -> new int[TILE_CODES]);
+    private final ThreadLocal<TileKey> probes =
+            ThreadLocal.withInitial(() -> new TileKey(0));
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder spillHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bypasses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // Spilling, both null if there is no spill directory
+    private final MappedByteBuffer[] regions;
+    private final AtomicLongArray spilled;
+    private final AtomicLong spilledTiles = new AtomicLong();
+    private final int rowsPerRegion;
+
+    private RatingMatrix(GameSpec spec, RatingEngine compute, long budget,
+            Path directory) {
+        this.spec = spec;
+        this.compute = compute;
+        this.codeCount = spec.getCodeCount();
+        this.tilesPerRow = (codeCount + TILE_CODES - 1) / TILE_CODES;
+        this.stripeCapacity = (int) Math.max(1,
+                budget / TILE_CODES / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.rowsPerRegion = (int) (REGION_BYTES / codeCount);
+        this.regions = directory == null ? null : mapSpillFile(directory);
+        this.spilled = regions == null ? null
+                : new AtomicLongArray(
+                        (int) (((long) codeCount * tilesPerRow + Long.SIZE
+                                - 1) / Long.SIZE));
+    }
+
+    /**
+     * Creates the spill file and maps all of it, a region of
+     * {@value #REGION_BYTES} bytes at a time. The mappings stay valid after
+     * the channel is closed, and only the tiles written take disk space.
+     *
+     * @return the regions, or null if the file cannot be mapped
+     */
+    private MappedByteBuffer[] mapSpillFile(Path directory) {
+        final MappedByteBuffer[] mapped = new MappedByteBuffer[
+                (codeCount + rowsPerRegion - 1) / rowsPerRegion];
+        try {
+            Files.createDirectories(directory);
+            Path file = Files.createTempFile(directory, "ratings-"
+                    + spec.getColors() + "x" + spec.getSlots() + "-", ".bin");
+            file.toFile().deleteOnExit();
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                for (int r = 0; r < mapped.length; r++) {
+                    long size = (long) Math.min(rowsPerRegion,
+                            codeCount - r * rowsPerRegion) * codeCount;
+                    mapped[r] = channel.map(FileChannel.MapMode.READ_WRITE,
+                            (long) r * rowsPerRegion * codeCount, size);
+                }
+            }
+        } catch (IOException ex) {
+            // Tiles are recomputed instead
+            return null;
+        }
+        return mapped;
+    }
+
+    /**
+     * Sets the memory budget and the spill directory of the matrices that are
+     * created from now on. Matrices are created when a game of their code
+     * space needs ratings for the first time.
+     *
+     * @param budgetBytes
+     *            memory for the tiles of one matrix, at least one tile per
+     *            stripe is kept
+     * @param spillDirectory
+     *            directory for the spill files, deleted when the JVM exits,
+     *            or null to recompute evicted tiles
+     */
+    public static synchronized void configure(long budgetBytes,
+            Path spillDirectory) {
+        if (budgetBytes < 0) {
+            throw new IllegalArgumentException(
+                    "Budget must not be negative. Is " + budgetBytes);
+        }
+        configuredBudget = budgetBytes;
+        configuredDirectory = spillDirectory;
+    }
+
+    /**
+     * Returns the matrix of a code space.
+     *
+     * @param spec
+     *            dimensions of the game
+     * @return the shared matrix, or null if the code space is rated by a
+     *         full table or directly
+     */
+    public static RatingMatrix forSpec(GameSpec spec) {
+        RatingEngine engine = RatingEngine.forSpec(spec);
+        return engine instanceof Engine ? ((Engine) engine).matrix : null;
+    }
+
+    /**
+     * Creates the engine of a code space that gets a matrix.
+     *
+     * @param compute
+     *            engine that computes the ratings of missing tiles
+     * @return engine backed by a new matrix
+     */
+    static synchronized RatingEngine createEngine(RatingEngine compute) {
+        return new Engine(new RatingMatrix(compute.getSpec(), compute,
+                configuredBudget, configuredDirectory));
+    }
+
+    /**
+     * Checks whether a code space gets a matrix.
+     *
+     * @param spec
+     *            dimensions of the game
+     * @return true if the code space is too large for a table but not for a
+     *         matrix
+     */
+    static boolean isTiled(GameSpec spec) {
+        return spec.getCodeCount() > RatingTable.MAX_CODE_COUNT
+                && spec.getCodeCount() <= MAX_CODE_COUNT;
+    }
+
+    /**
+     * Returns the number of tiles found in memory.
+     *
+     * @return number of hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of tiles read back from the spill file.
+     *
+     * @return number of spill hits
+     */
+    public long getSpillHits() {
+        return spillHits.sum();
+    }
+
+    /**
+     * Returns the number of tiles that had to be computed.
+     *
+     * @return number of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of times a batch used too few ratings of a missing
+     * tile, so they were computed directly.
+     *
+     * @return number of bypasses
+     */
+    public long getBypasses() {
+        return bypasses.sum();
+    }
+
+    /**
+     * Returns the share of tile requests served without computing.
+     *
+     * @return hit rate from 0 to 1
+     */
+    public double getHitRate() {
+        long served = getHits() + getSpillHits();
+        long total = served + getMisses();
+        return total == 0 ? 0 : (double) served / total;
+    }
+
+    /**
+     * Returns the memory used by the tiles in the cache.
+     *
+     * @return resident bytes
+     */
+    public long getResidentBytes() {
+        long tiles = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                tiles += stripe.size();
+            }
+        }
+        return tiles * TILE_CODES;
+    }
+
+    /**
+     * Returns the size of the tiles written to the spill file.
+     *
+     * @return spilled bytes, 0 if there is no spill directory
+     */
+    public long getSpilledBytes() {
+        return spilledTiles.get() * TILE_CODES;
+    }
+
+    /**
+     * Rates one guess against many color codes, tile by tile. Best for codes
+     * in ascending order, where the codes of one tile are consecutive.
+     */
+    private void rateAll(int guess, int[] codes, int count, byte[] ratings) {
+        if ((long) count * TILE_CODES < (long) codeCount * MIN_AVERAGE_USE) {
+            compute.rateAll(guess, codes, count, ratings);
+            return;
+        }
+        int i = 0;
+        while (i < count) {
+            final int tileIndex = codes[i] / TILE_CODES;
+            int end = i + 1;
+            while (end < count && codes[end] / TILE_CODES == tileIndex) {
+                end++;
+            }
+            final byte[] tile = tile(guess, tileIndex, end - i);
+            if (tile == null) {
+                for (int j = i; j < end; j++) {
+                    ratings[j] = (byte) compute.rate(codes[j], guess);
+                }
+            } else {
+                final int base = tileIndex * TILE_CODES;
+                for (int j = i; j < end; j++) {
+                    ratings[j] = tile[codes[j] - base];
+                }
+            }
+            i = end;
+        }
+    }
+
+    private void countAll(int guess, int[] codes, int count,
+            int[] histogram) {
+        if ((long) count * TILE_CODES < (long) codeCount * MIN_AVERAGE_USE) {
+            compute.countAll(guess, codes, count, histogram);
+            return;
+        }
+        int i = 0;
+        while (i < count) {
+            final int tileIndex = codes[i] / TILE_CODES;
+            int end = i + 1;
+            while (end < count && codes[end] / TILE_CODES == tileIndex) {
+                end++;
+            }
+            final byte[] tile = tile(guess, tileIndex, end - i);
+            if (tile == null) {
+                for (int j = i; j < end; j++) {
+                    histogram[compute.rate(codes[j], guess)]++;
+                }
+            } else {
+                final int base = tileIndex * TILE_CODES;
+                for (int j = i; j < end; j++) {
+                    histogram[tile[codes[j] - base] & 0xFF]++;
+                }
+            }
+            i = end;
+        }
+    }
+
+    /**
+     * Returns a tile from the cache, the spill file or computed.
+     *
+     * @param uses
+     *            number of ratings the caller needs from the tile
+     * @return the tile, or null if it is missing and {@code uses} is too low
+     *         to compute it
+     */
+    private byte[] tile(int guess, int tileIndex, int uses) {
+        final long key = (long) guess * tilesPerRow + tileIndex;
+        final Stripe stripe = stripes[(int) (key % STRIPES)];
+        final TileKey probe = probes.get();
+        probe.key = key;
+        byte[] tile;
+        synchronized (stripe) {
+            tile = stripe.get(probe);
+        }
+        if (tile != null) {
+            hits.increment();
+            return tile;
+        }
+        tile = readSpilled(key, guess, tileIndex);
+        if (tile != null) {
+            spillHits.increment();
+        } else if (uses < MIN_TILE_USE) {
+            bypasses.increment();
+            return null;
+        } else {
+            misses.increment();
+            tile = computeTile(guess, tileIndex);
+        }
+        // Computed outside of the lock, two threads may compute the same
+        // tile, but both get the same ratings
+        synchronized (stripe) {
+            stripe.put(new TileKey(key), tile);
+        }
+        return tile;
+    }
+
+    private byte[] computeTile(int guess, int tileIndex) {
+        final int from = tileIndex * TILE_CODES;
+        final int n = Math.min(TILE_CODES, codeCount - from);
+        final int[] codes = tileCodes.get();
+        for (int i = 0; i < n; i++) {
+            codes[i] = from + i;
+        }
+        final byte[] tile = new byte[n];
+        compute.rateAll(guess, codes, n, tile);
+        return tile;
+    }
+
+    /**
+     * Writes an evicted tile to the spill file. Called with the lock of its
+     * stripe held.
+     */
+    private void spill(long key, byte[] tile) {
+        if (spilled == null || isSpilled(key)) {
+            return;
+        }
+        final int guess = (int) (key / tilesPerRow);
+        final int tileIndex = (int) (key % tilesPerRow);
+        // A duplicate of its own, the positions of other threads stay
+        final ByteBuffer region = region(guess).duplicate();
+        region.position(offset(guess, tileIndex));
+        region.put(tile);
+        // Set after writing, so readers that see the bit see the tile
+        spilled.getAndAccumulate((int) (key >>> 6), 1L << key,
+                (a, b) -> a | b);
+        spilledTiles.incrementAndGet();
+    }
+
+    private byte[] readSpilled(long key, int guess, int tileIndex) {
+        if (spilled == null || !isSpilled(key)) {
+            return null;
+        }
+        final int from = tileIndex * TILE_CODES;
+        final byte[] tile = new byte[Math.min(TILE_CODES, codeCount - from)];
+        final ByteBuffer region = region(guess).duplicate();
+        region.position(offset(guess, tileIndex));
+        region.get(tile);
+        return tile;
+    }
+
+    private boolean isSpilled(long key) {
+        return (spilled.get((int) (key >>> 6)) & 1L << key) != 0;
+    }
+
+    private int offset(int guess, int tileIndex) {
+        return (guess % rowsPerRegion) * codeCount + tileIndex * TILE_CODES;
+    }
+
+    /**
+     * Returns the region of the spill file that holds the row of a guess.
+     */
+    private MappedByteBuffer region(int guess) {
+        return regions[guess / rowsPerRegion];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d spill hits, %d misses (%.1f %%), "
+                + "%d bypasses, %d evictions, %d KB resident, %d KB spilled",
+                getHits(), getSpillHits(), getMisses(), 100 * getHitRate(),
+                getBypasses(), evictions.sum(), getResidentBytes() >> 10,
+                getSpilledBytes() >> 10);
+    }
+}
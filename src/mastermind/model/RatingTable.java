@@ -0,0 +1,63 @@
+package mastermind.model;
+
+/**
+ * Precomputed ratings of every pair of color codes, one byte per pair. Only
+ * used for code spaces of at most {@value #MAX_CODE_COUNT} color codes.
+ */
+final class RatingTable extends RatingEngine {
+
+    /**
+     * Largest code space that gets a table (16 MB).
+     */
+    static final int MAX_CODE_COUNT = 4096;
+
+    private final int size;
+    private final byte[] table;
+
+    /**
+     * Builds the table for the specified code space.
+     *
+     * @param spec
+     *            dimensions of the game
+     */
+    RatingTable(GameSpec spec) {
+        super(spec);
+        this.size = spec.getCodeCount();
+        this.table = new byte[size * size];
+
+        final RatingEngine direct = new DirectRatingEngine(spec);
+        for (int s = 0; s < size; s++) {
+            for (int g = s; g < size; g++) {
+                // Rating is symmetric
+                byte rating = (byte) direct.rate(s, g);
+                table[s * size + g] = rating;
+                table[g * size + s] = rating;
+            }
+        }
+    }
+
+    @Override
+    int rate(int secret, int guess) {
+        return table[secret * size + guess] & 0xFF;
+    }
+
+    /**
+     * {@inheritDoc} Ratings are symmetric, so the ratings of a guess are one
+     * row of the table.
+     */
+    @Override
+    void rateAll(int guess, int[] codes, int count, byte[] ratings) {
+        final int row = guess * size;
+        for (int i = 0; i < count; i++) {
+            ratings[i] = table[row + codes[i]];
+        }
+    }
+
+    @Override
+    void countAll(int guess, int[] codes, int count, int[] histogram) {
+        final int row = guess * size;
+        for (int i = 0; i < count; i++) {
+            histogram[table[row + codes[i]] & 0xFF]++;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package mastermind.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * The next machine moves for every rating the last machine move can get,
+ * computed before the rating is known. The candidates are partitioned by the
+ * rating they would give once; each part becomes the candidate set of its
+ * rating and gets a task of its own. Parts with more candidates are more
+ * likely to be the right one, so they are submitted first.
+ */
+final class Speculation {
+
+    /**
+     * Largest number of candidates that is speculated on. The parts need one
+     * index per candidate (4 MB at this size).
+     */
+    static final int MAX_CANDIDATES = 1 << 20;
+
+    private final SurvivorList[] parts;
+    private final List<Future<Integer>> guesses;
+
+    /**
+     * Partitions the candidates and submits the tasks.
+     *
+     * @param strategy
+     *            strategy of the machine guesser
+     * @param candidates
+     *            candidates before the rating, at most
+     *            {@value #MAX_CANDIDATES}
+     * @param guess
+     *            index of the last machine move, not rated yet
+     * @param symmetry
+     *            symmetry of the moves including the last one
+     * @param executor
+     *            executes the tasks
+     */
+    Speculation(GuessStrategy strategy, CandidateSet candidates, int guess,
+            Symmetry symmetry, ExecutorService executor) {
+        final GameSpec spec = candidates.getSpec();
+        this.parts = SurvivorList.partition(candidates, guess);
+        this.guesses = new ArrayList<>(parts.length);
+        final Integer[] order = new Integer[parts.length];
+        for (int r = 0; r < parts.length; r++) {
+            guesses.add(null);
+            order[r] = r;
+        }
+        Arrays.sort(order, (a, b) -> parts[b].count() - parts[a].count());
+
+        final int won = spec.pack(spec.getSlots(), 0);
+        for (int r : order) {
+            if (parts[r].count() == 0) {
+                break;
+            } else if (r != won) {
+                SurvivorList part = parts[r];
+                guesses.set(r, executor.submit(
+                        () -> strategy.nextGuess(part, symmetry)));
+            }
+        }
+    }
+
+    /**
+     * Returns the candidates that are left after the specified rating.
+     *
+     * @param packedRating
+     *            rating of the last machine move
+     * @return candidates consistent with the rating
+     */
+    CandidateSet candidates(int packedRating) {
+        return parts[packedRating];
+    }
+
+    /**
+     * Returns the next machine move for the specified rating and cancels the
+     * computation of all others.
+     *
+     * @param packedRating
+     *            rating of the last machine move
+     * @return index of the next guess when done, or null if there are no
+     *         candidates left or the game is won
+     */
+    Future<Integer> take(int packedRating) {
+        Future<Integer> taken = guesses.set(packedRating, null);
+        cancel();
+        return taken;
+    }
+
+    /**
+     * Cancels all computations that are not taken.
+     */
+    void cancel() {
+        for (Future<Integer> guess : guesses) {
+            if (guess != null) {
+                guess.cancel(true);
+            }
+        }
+    }
+}
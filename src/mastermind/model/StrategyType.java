@@ -0,0 +1,82 @@
+package mastermind.model;
+
+/**
+ * The strategies the machine guesser ships with.
+ */
+public enum StrategyType {
+
+    /**
+     * Guesses the first consistent color code.
+     */
+    FIRST_CONSISTENT("First consistent") {
+        @Override
+        public GuessStrategy create() {
+            return new FirstConsistentStrategy();
+        }
+    },
+
+    /**
+     * Minimizes the worst case number of remaining candidates.
+     */
+    KNUTH_MINIMAX("Knuth minimax") {
+        @Override
+        public GuessStrategy create() {
+            return new KnuthMinimaxStrategy();
+        }
+    },
+
+    /**
+     * Maximizes the entropy of the rating.
+     */
+    MAX_ENTROPY("Max entropy") {
+        @Override
+        public GuessStrategy create() {
+            return new MaxEntropyStrategy();
+        }
+    },
+
+    /**
+     * Minimizes the expected number of remaining candidates.
+     */
+    EXPECTED_SIZE("Expected size") {
+        @Override
+        public GuessStrategy create() {
+            return new ExpectedSizeStrategy();
+        }
+    };
+
+    private final String description;
+
+    private StrategyType(String description) {
+        this.description = description;
+    }
+
+    /**
+     * Constructs an instance of the strategy.
+     *
+     * @return new strategy
+     */
+    public abstract GuessStrategy create();
+
+    /**
+     * Finds a strategy by the name returned by
+     * {@link GuessStrategy#getName()}.
+     *
+     * @param name
+     *            name of the strategy
+     * @return the strategy, or {@code null} if there is none with this name
+     */
+    public static StrategyType byName(String name) {
+        for (StrategyType type : values()) {
+            if (type.create().getName().equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -0,0 +1,139 @@
+package mastermind.model;
+
+/**
+ * A dense list of the color codes that are still possible. Filtering compacts
+ * the list in place, so its cost only depends on the number of survivors, not
+ * on the number of all color codes.
+ */
+final class SurvivorList implements CandidateSet {
+
+    private final RatingEngine engine;
+    private final int[] codes;
+    private int size;
+
+    /**
+     * Constructs a list containing the same color codes as {@code other}.
+     *
+     * @param other
+     *            set to copy
+     */
+    SurvivorList(CandidateSet other) {
+        engine = RatingEngine.forSpec(other.getSpec());
+        codes = new int[other.count()];
+        size = other.copyTo(codes);
+    }
+
+    /**
+     * Constructs a list of the specified color codes. The list takes
+     * ownership of the array.
+     *
+     * @param spec
+     *            dimensions of the game
+     * @param codes
+     *            indices of the color codes in ascending order
+     */
+    SurvivorList(GameSpec spec, int[] codes) {
+        engine = RatingEngine.forSpec(spec);
+        this.codes = codes;
+        size = codes.length;
+    }
+
+    /**
+     * Splits candidates by the rating they would give to a guess.
+     *
+     * @param candidates
+     *            candidates to split
+     * @param guess
+     *            index of the guess
+     * @return candidates per packed rating, empty lists for ratings no
+     *         candidate gives
+     */
+    static SurvivorList[] partition(CandidateSet candidates, int guess) {
+        final GameSpec spec = candidates.getSpec();
+        final RatingEngine engine = RatingEngine.forSpec(spec);
+        final int numberOutcomes = spec.getNumberOutcomes();
+        final int[] codes = new int[candidates.count()];
+        candidates.copyTo(codes);
+
+        final byte[] ratingOf = new byte[codes.length];
+        final int[] sizes = new int[numberOutcomes];
+        engine.rateAll(guess, codes, codes.length, ratingOf);
+        for (byte rating : ratingOf) {
+            sizes[rating & 0xFF]++;
+        }
+        final int[][] parts = new int[numberOutcomes][];
+        for (int r = 0; r < numberOutcomes; r++) {
+            parts[r] = new int[sizes[r]];
+            sizes[r] = 0;
+        }
+        for (int i = 0; i < codes.length; i++) {
+            // Codes are visited in ascending order, so the parts are sorted
+            int rating = ratingOf[i] & 0xFF;
+            parts[rating][sizes[rating]++] = codes[i];
+        }
+        final SurvivorList[] lists = new SurvivorList[numberOutcomes];
+        for (int r = 0; r < numberOutcomes; r++) {
+            lists[r] = new SurvivorList(spec, parts[r]);
+        }
+        return lists;
+    }
+
+    @Override
+    public GameSpec getSpec() {
+        return engine.getSpec();
+    }
+
+    @Override
+    public int count() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(int code) {
+        // Indices are kept in ascending order
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (codes[mid] < code) {
+                low = mid + 1;
+            } else if (codes[mid] > code) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int first() {
+        return size == 0 ? -1 : codes[0];
+    }
+
+    @Override
+    public void retain(int guess, int packedRating) {
+        final int[] batch = RatingEngine.batchCodes();
+        final byte[] ratings = RatingEngine.batchRatings();
+        int kept = 0;
+        for (int from = 0; from < size; from += batch.length) {
+            // The batch is copied before the survivors are moved, which
+            // never overtake the codes still to be rated
+            final int n = Math.min(batch.length, size - from);
+            System.arraycopy(codes, from, batch, 0, n);
+            engine.rateAll(guess, batch, n, ratings);
+            for (int i = 0; i < n; i++) {
+                if ((ratings[i] & 0xFF) == packedRating) {
+                    codes[kept++] = batch[i];
+                }
+            }
+        }
+        size = kept;
+    }
+
+    @Override
+    public int copyTo(int[] dest) {
+        System.arraycopy(codes, 0, dest, 0, size);
+        return size;
+    }
+}
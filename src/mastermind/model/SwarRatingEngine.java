@@ -0,0 +1,177 @@
+package mastermind.model;
+
+/**
+ * Computes every rating with bit operations on packed words, without arrays
+ * or branches per rating. Used for code spaces too large for a table, with at
+ * most {@value #MAX_COLORS} colors.
+ * <p>
+ * A color code is packed into a {@code long} with one nibble per slot: black
+ * spikes are the nibbles that are equal in both codes. The number of spikes
+ * per color is packed into two {@code long}s with one byte per color; the
+ * number of black and white spikes together is the sum of the bytewise
+ * minimum of both codes.
+ * <p>
+ * Both words are looked up instead of computed from the digits. The index is
+ * split into its high and low slots, and each half has a table, so the
+ * tables only have about the square root of the number of color codes as
+ * entries.
+ */
+final class SwarRatingEngine extends RatingEngine {
+
+    /**
+     * Largest number of colors, so a color fits into a nibble and the counts
+     * into two words.
+     */
+    static final int MAX_COLORS = 16;
+
+    private static final long NIBBLE_LOW_BITS = 0x1111111111111111L;
+    private static final long BYTE_HIGH_BITS = 0x8080808080808080L;
+    private static final long BYTE_LOW_BITS = 0x0101010101010101L;
+
+    private final int slots;
+    private final int lowCount;
+    private final long slotMask;
+    private final long[] digitsHigh;
+    private final long[] digitsLow;
+    private final long[] countsHigh;
+    private final long[] countsLow;
+
+    /**
+     * Builds the tables for the specified code space.
+     *
+     * @param spec
+     *            dimensions of the game, at most {@value #MAX_COLORS} colors
+     */
+    SwarRatingEngine(GameSpec spec) {
+        super(spec);
+        if (spec.getColors() > MAX_COLORS) {
+            throw new IllegalArgumentException("At most " + MAX_COLORS
+                    + " colors can be packed. Are " + spec.getColors());
+        }
+        this.slots = spec.getSlots();
+        final int lowSlots = slots / 2;
+        final int highSlots = slots - lowSlots;
+        this.lowCount = power(spec.getColors(), lowSlots);
+        this.slotMask = NIBBLE_LOW_BITS >>> (Long.SIZE - 4 * slots);
+        this.digitsLow = new long[lowCount];
+        this.countsLow = new long[2 * lowCount];
+        fill(digitsLow, countsLow, lowSlots, 0);
+        final int highCount = power(spec.getColors(), highSlots);
+        this.digitsHigh = new long[highCount];
+        this.countsHigh = new long[2 * highCount];
+        fill(digitsHigh, countsHigh, highSlots, lowSlots);
+    }
+
+    /**
+     * Fills the tables of the codes of some slots.
+     *
+     * @param digits
+     *            packed digits per code, shifted to their slots
+     * @param counts
+     *            two words of counts per code
+     * @param halfSlots
+     *            number of slots of the half
+     * @param shift
+     *            number of less significant slots
+     */
+    private void fill(long[] digits, long[] counts, int halfSlots,
+            int shift) {
+        final int colors = getSpec().getColors();
+        for (int code = 0; code < digits.length; code++) {
+            int rest = code;
+            long packed = 0;
+            for (int i = 0; i < halfSlots; i++) {
+                int color = rest % colors;
+                rest /= colors;
+                packed |= (long) color << 4 * (shift + i);
+                counts[2 * code + color / 8] += 1L << 8 * (color % 8);
+            }
+            digits[code] = packed;
+        }
+    }
+
+    @Override
+    int rate(int secret, int guess) {
+        final int guessHigh = guess / lowCount;
+        final int guessLow = guess - guessHigh * lowCount;
+        return rate(secret,
+                digitsHigh[guessHigh] | digitsLow[guessLow],
+                countsHigh[2 * guessHigh] + countsLow[2 * guessLow],
+                countsHigh[2 * guessHigh + 1] + countsLow[2 * guessLow + 1]);
+    }
+
+    /**
+     * {@inheritDoc} The words of the guess are looked up once.
+     */
+    @Override
+    void rateAll(int guess, int[] codes, int count, byte[] ratings) {
+        final int guessHigh = guess / lowCount;
+        final int guessLow = guess - guessHigh * lowCount;
+        final long digits = digitsHigh[guessHigh] | digitsLow[guessLow];
+        final long counts0 = countsHigh[2 * guessHigh]
+                + countsLow[2 * guessLow];
+        final long counts1 = countsHigh[2 * guessHigh + 1]
+                + countsLow[2 * guessLow + 1];
+        for (int i = 0; i < count; i++) {
+            ratings[i] = (byte) rate(codes[i], digits, counts0, counts1);
+        }
+    }
+
+    @Override
+    void countAll(int guess, int[] codes, int count, int[] histogram) {
+        final int guessHigh = guess / lowCount;
+        final int guessLow = guess - guessHigh * lowCount;
+        final long digits = digitsHigh[guessHigh] | digitsLow[guessLow];
+        final long counts0 = countsHigh[2 * guessHigh]
+                + countsLow[2 * guessLow];
+        final long counts1 = countsHigh[2 * guessHigh + 1]
+                + countsLow[2 * guessLow + 1];
+        for (int i = 0; i < count; i++) {
+            histogram[rate(codes[i], digits, counts0, counts1)]++;
+        }
+    }
+
+    /**
+     * Rates a secret against the packed words of a guess.
+     */
+    private int rate(int secret, long guessDigits, long guessCounts0,
+            long guessCounts1) {
+        final int secretHigh = secret / lowCount;
+        final int secretLow = secret - secretHigh * lowCount;
+
+        // A nibble of the xor is zero where the colors match
+        final long x = (digitsHigh[secretHigh] | digitsLow[secretLow])
+                ^ guessDigits;
+        final long differ = (x | x >>> 1 | x >>> 2 | x >>> 3) & slotMask;
+        final int black = slots - Long.bitCount(differ);
+
+        // Counts of the halves never carry, they are at most the slots
+        final int all = sumOfMinimum(
+                countsHigh[2 * secretHigh] + countsLow[2 * secretLow],
+                guessCounts0)
+                + sumOfMinimum(countsHigh[2 * secretHigh + 1]
+                        + countsLow[2 * secretLow + 1], guessCounts1);
+        return black * (slots + 1) + all - black;
+    }
+
+    /**
+     * Sums the bytewise minimum of two words of counts below 128.
+     */
+    private static int sumOfMinimum(long a, long b) {
+        // The high bit of a byte survives the subtraction where a >= b
+        final long greaterOrEqual =
+                ((a | BYTE_HIGH_BITS) - b & BYTE_HIGH_BITS) >>> 7;
+        final long mask = greaterOrEqual * 0xFF;
+        final long min = b & mask | a & ~mask;
+        // The sum is at most the number of slots, so it fits the top byte
+        return (int) (min * BYTE_LOW_BITS >>> 56);
+    }
+
+    private static int power(int base, int exponent) {
+        int result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= base;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,288 @@
+package mastermind.model;
+
+import java.util.Arrays;
+
+/**
+ * The permutations of colors and slots that leave every guess of a game so
+ * far unchanged. Such a permutation maps the candidates onto themselves, so
+ * guesses that it maps onto each other split the candidates alike and only
+ * one of them, the representative, has to be searched.
+ * <p>
+ * Two kinds of permutations are tracked: colors that appear in no guess are
+ * interchangeable, and so are slots that got the same color in every guess.
+ * Before the first move every color and every slot is interchangeable. The
+ * representative of a guess is the one with the lowest index among the
+ * guesses the permutations map it onto. Immutable; {@link #after(int)} gives
+ * the symmetry of the next move.
+ */
+public final class Symmetry {
+
+    private final GameSpec spec;
+    private final boolean[] used;
+    private final int[] unusedColors;
+    private final int[] slotClasses;
+    private final boolean trivial;
+
+    private Symmetry(GameSpec spec, boolean[] used, int[] slotClasses) {
+        this.spec = spec;
+        this.used = used;
+        this.slotClasses = slotClasses;
+        int unused = 0;
+        for (boolean isUsed : used) {
+            unused += isUsed ? 0 : 1;
+        }
+        this.unusedColors = new int[unused];
+        for (int color = 0, i = 0; color < used.length; color++) {
+            if (!used[color]) {
+                unusedColors[i++] = color;
+            }
+        }
+        boolean slotsFixed = true;
+        for (int slot = 0; slot < slotClasses.length; slot++) {
+            slotsFixed &= slotClasses[slot] == slot;
+        }
+        this.trivial = unused <= 1 && slotsFixed;
+    }
+
+    /**
+     * Returns the symmetry before the first move, where all colors and slots
+     * are interchangeable.
+     *
+     * @param spec
+     *            dimensions of the game
+     * @return full symmetry of the code space
+     */
+    public static Symmetry of(GameSpec spec) {
+        return new Symmetry(spec, new boolean[spec.getColors()],
+                new int[spec.getSlots()]);
+    }
+
+    /**
+     * Returns the symmetry that only knows the identity, for candidates whose
+     * history is unknown.
+     *
+     * @param spec
+     *            dimensions of the game
+     * @return trivial symmetry
+     */
+    public static Symmetry none(GameSpec spec) {
+        final boolean[] used = new boolean[spec.getColors()];
+        Arrays.fill(used, true);
+        final int[] slotClasses = new int[spec.getSlots()];
+        for (int slot = 0; slot < slotClasses.length; slot++) {
+            slotClasses[slot] = slot;
+        }
+        return new Symmetry(spec, used, slotClasses);
+    }
+
+    /**
+     * Returns the symmetry that is left after another guess. The rating does
+     * not matter.
+     *
+     * @param guess
+     *            index of the guess
+     * @return symmetry of the next move
+     */
+    public Symmetry after(int guess) {
+        if (trivial) {
+            return this;
+        }
+        final int[] digits = digits(guess);
+        final boolean[] nextUsed = used.clone();
+        final int[] nextClasses = new int[slotClasses.length];
+        for (int slot = 0; slot < digits.length; slot++) {
+            nextUsed[digits[slot]] = true;
+            // The class of a slot is named after its first slot
+            nextClasses[slot] = slot;
+            for (int other = 0; other < slot; other++) {
+                if (nextClasses[other] == other
+                        && slotClasses[other] == slotClasses[slot]
+                        && digits[other] == digits[slot]) {
+                    nextClasses[slot] = other;
+                    break;
+                }
+            }
+        }
+        return new Symmetry(spec, nextUsed, nextClasses);
+    }
+
+    /**
+     * Returns the dimensions of the game.
+     *
+     * @return spec of the game
+     */
+    public GameSpec getSpec() {
+        return spec;
+    }
+
+    /**
+     * Checks whether there is no permutation besides the identity left, so
+     * every guess is its own representative.
+     *
+     * @return true if nothing can be saved
+     */
+    public boolean isTrivial() {
+        return trivial;
+    }
+
+    /**
+     * Checks whether a guess is the representative of its class.
+     *
+     * @param guess
+     *            index of a color code
+     * @return true if no permutation maps it onto a lower index
+     */
+    public boolean isRepresentative(int guess) {
+        if (trivial) {
+            return true;
+        }
+        final int[] digits = digits(guess);
+        // Cheap test first: new colors have to be the lowest unused ones, in
+        // the order they first appear
+        final int[] label = new int[used.length];
+        int assigned = 0;
+        for (int digit : digits) {
+            if (!used[digit] && label[digit] == 0) {
+                if (digit != unusedColors[assigned]) {
+                    return false;
+                }
+                label[digit] = ++assigned;
+            }
+        }
+        return canonical(digits) == guess;
+    }
+
+    /**
+     * Returns the representative of the class of a guess.
+     *
+     * @param guess
+     *            index of a color code
+     * @return index of the representative, at most {@code guess}
+     */
+    public int canonical(int guess) {
+        return trivial ? guess : canonical(digits(guess));
+    }
+
+    /**
+     * Keeps the representatives among some guesses.
+     *
+     * @param guesses
+     *            indices of color codes in ascending order, or null for all
+     *            color codes
+     * @return indices of the representatives in ascending order
+     */
+    int[] representatives(int[] guesses) {
+        final int count = guesses == null ? spec.getCodeCount()
+                : guesses.length;
+        int[] result = new int[Math.min(count, 1024)];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            final int guess = guesses == null ? i : guesses[i];
+            if (isRepresentative(guess)) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, 2 * size);
+                }
+                result[size++] = guess;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Searches the lowest index of the color codes a guess is mapped onto.
+     * Slot by slot, the remaining slots of the same class are tried in every
+     * order that gives a distinct color; unused colors get the lowest unused
+     * labels as they appear. Orders that cannot beat the best found so far
+     * are cut off.
+     */
+    private int canonical(int[] digits) {
+        final int[] best = digits.clone();
+        final int[] current = new int[digits.length];
+        final int[] label = new int[used.length];
+        search(digits, 0, new boolean[digits.length], label, 0, current,
+                best);
+        int index = 0;
+        for (int digit : best) {
+            index = index * spec.getColors() + digit;
+        }
+        return index;
+    }
+
+    private void search(int[] digits, int position, boolean[] taken,
+            int[] label, int assigned, int[] current, int[] best) {
+        if (position == digits.length) {
+            System.arraycopy(current, 0, best, 0, current.length);
+            return;
+        }
+        boolean[] triedColors = null;
+        for (int slot = 0; slot < digits.length; slot++) {
+            if (taken[slot] || slotClasses[slot] != slotClasses[position]) {
+                continue;
+            }
+            final int color = digits[slot];
+            if (triedColors == null) {
+                triedColors = new boolean[used.length];
+            } else if (triedColors[color]) {
+                continue;
+            }
+            triedColors[color] = true;
+            final boolean isNew = !used[color] && label[color] == 0;
+            final int value = used[color] ? color
+                    : isNew ? unusedColors[assigned] : label[color] - 1;
+            current[position] = value;
+            if (compare(current, best, position) > 0) {
+                continue;
+            }
+            taken[slot] = true;
+            if (isNew) {
+                label[color] = value + 1;
+            }
+            search(digits, position + 1, taken, label,
+                    isNew ? assigned + 1 : assigned, current, best);
+            if (isNew) {
+                label[color] = 0;
+            }
+            taken[slot] = false;
+        }
+    }
+
+    /**
+     * Compares the first {@code position + 1} digits.
+     */
+    private static int compare(int[] current, int[] best, int position) {
+        for (int i = 0; i <= position; i++) {
+            if (current[i] != best[i]) {
+                return current[i] - best[i];
+            }
+        }
+        return 0;
+    }
+
+    private int[] digits(int code) {
+        final int[] digits = new int[slotClasses.length];
+        int rest = code;
+        for (int i = digits.length - 1; i >= 0; i--) {
+            digits[i] = rest % spec.getColors();
+            rest /= spec.getColors();
+        }
+        return digits;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(unusedColors.length).append(" unused colors, slots");
+        for (int first = 0; first < slotClasses.length; first++) {
+            if (slotClasses[first] == first) {
+                sb.append(" [").append(first);
+                for (int slot = first + 1; slot < slotClasses.length; slot++) {
+                    if (slotClasses[slot] == first) {
+                        sb.append(' ').append(slot);
+                    }
+                }
+                sb.append(']');
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,263 @@
+package mastermind.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import mastermind.model.MastermindGame;
+
+/**
+ * Plays against a {@link GameApi} from several threads and reports every
+ * second how many requests per second are answered.
+ * <p>
+ * Every thread plays whole games over one kept-alive connection: it creates
+ * a game, guesses random color codes until the game is over, fetches the
+ * board and the secret and deletes the game. A failed request counts as an
+ * error and opens a new connection.
+ */
+public final class ApiBenchmark {
+
+    /**
+     * A kept-alive connection of one thread, opened again after a failure.
+     */
+    private final class Connection {
+
+        private Socket socket;
+        private InputStream in;
+        private OutputStream out;
+
+        private Connection open() throws IOException {
+            if (socket == null) {
+                socket = new Socket(host, port);
+                socket.setTcpNoDelay(true);
+                in = new BufferedInputStream(socket.getInputStream());
+                out = new BufferedOutputStream(socket.getOutputStream());
+            }
+            return this;
+        }
+
+        private String readLine() throws IOException {
+            final StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != '\n') {
+                if (c < 0) {
+                    throw new EOFException("Connection closed.");
+                } else if (c != '\r') {
+                    line.append((char) c);
+                }
+            }
+            return line.toString();
+        }
+
+        private byte[] readBody(int length) throws IOException {
+            final byte[] body = new byte[length];
+            int n = 0;
+            while (n < length) {
+                final int read = in.read(body, n, length - n);
+                if (read < 0) {
+                    throw new EOFException("Connection closed.");
+                }
+                n += read;
+            }
+            return body;
+        }
+
+        private void close() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException ex) {
+                    // Opened again for the next request
+                }
+                socket = null;
+            }
+        }
+    }
+
+    private final String host;
+    private final int port;
+    private final int colors;
+    private final int slots;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final LongAdder games = new LongAdder();
+    private volatile boolean running = true;
+
+    private ApiBenchmark(String host, int port, int colors, int slots) {
+        this.host = host;
+        this.port = port;
+        this.colors = colors;
+        this.slots = slots;
+    }
+
+    /**
+     * Runs the benchmark and prints the statistics.
+     *
+     * @param args
+     *            options {@code -host}, {@code -port}, {@code -threads},
+     *            {@code -seconds}, {@code -colors} and {@code -slots}, each
+     *            followed by its value
+     * @throws InterruptedException
+     *             if the main thread is interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        String host = "localhost";
+        int port = 8080;
+        int threads = 8;
+        int seconds = 10;
+        int colors = MastermindGame.NUMBER_COLORS;
+        int slots = MastermindGame.NUMBER_SLOTS;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "-host":
+                host = value;
+                break;
+            case "-port":
+                port = Integer.parseInt(value);
+                break;
+            case "-threads":
+                threads = Integer.parseInt(value);
+                break;
+            case "-seconds":
+                seconds = Integer.parseInt(value);
+                break;
+            case "-colors":
+                colors = Integer.parseInt(value);
+                break;
+            case "-slots":
+                slots = Integer.parseInt(value);
+                break;
+            default:
+                System.err.println("Unknown option " + args[i]);
+                return;
+            }
+        }
+
+        ApiBenchmark benchmark = new ApiBenchmark(host, port, colors,
+                slots);
+        Thread[] players = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final long seed = i;
+            players[i] = new Thread(() -> benchmark.play(new Random(seed)));
+            players[i].start();
+        }
+        benchmark.report(seconds);
+        benchmark.running = false;
+        for (Thread player : players) {
+            player.join();
+        }
+    }
+
+    private void report(int seconds) throws InterruptedException {
+        System.out.printf("%6s %12s %12s %8s%n", "s", "requests/s",
+                "latency ms", "errors");
+        long total = 0;
+        for (int s = 1; s <= seconds; s++) {
+            Thread.sleep(1000);
+            long count = requests.sumThenReset();
+            long nanos = latencyNanos.sumThenReset();
+            total += count;
+            System.out.printf("%6d %12d %12.3f %8d%n", s, count,
+                    count == 0 ? 0.0 : nanos / 1e6 / count, errors.sum());
+        }
+        System.out.printf("%d requests (%.0f/s), %d games, %d errors%n",
+                total, total / (double) seconds, games.sum(), errors.sum());
+    }
+
+    private void play(Random random) {
+        final Connection connection = new Connection();
+        final String create = "{\"colors\":" + colors + ",\"slots\":" + slots
+                + "}";
+        while (running) {
+            String game = request(connection, "POST", "/games", create);
+            if (game == null) {
+                continue;
+            }
+            String board;
+            do {
+                StringBuilder guess = new StringBuilder("{\"code\":[");
+                for (int i = 0; i < slots; i++) {
+                    guess.append(i == 0 ? "" : ",")
+                            .append(random.nextInt(colors));
+                }
+                board = request(connection, "POST", game + "/guess",
+                        guess.append("]}").toString());
+            } while (board != null && board.contains("\"state\":\"open\""));
+            request(connection, "GET", game, null);
+            request(connection, "GET", game + "/secret", null);
+            request(connection, "DELETE", game, null);
+            games.increment();
+        }
+        connection.close();
+    }
+
+    /**
+     * Sends a request in one write over the connection of the thread and
+     * reads the whole answer. Written by hand instead of with
+     * {@code HttpURLConnection}, which costs more than the server on one box.
+     *
+     * @return body of the answer, the location for a created game, or null
+     *         if the request failed
+     */
+    private String request(Connection connection, String method,
+            String path, String body) {
+        final long start = System.nanoTime();
+        try {
+            final byte[] content = body == null ? new byte[0]
+                    : body.getBytes(StandardCharsets.UTF_8);
+            final String head = method + " " + path + " HTTP/1.1\r\n"
+                    + "Host: " + host + "\r\n"
+                    + "Content-Type: application/json\r\n"
+                    + "Content-Length: " + content.length + "\r\n\r\n";
+            final byte[] request = Arrays.copyOf(
+                    head.getBytes(StandardCharsets.US_ASCII),
+                    head.length() + content.length);
+            System.arraycopy(content, 0, request, head.length(),
+                    content.length);
+            final Connection open = connection.open();
+            open.out.write(request);
+            open.out.flush();
+
+            final String statusLine = open.readLine();
+            final int status = Integer.parseInt(statusLine.split(" ")[1]);
+            int length = 0;
+            String location = null;
+            String header;
+            while (!(header = open.readLine()).isEmpty()) {
+                final int colon = header.indexOf(':');
+                final String name = header.substring(0, colon);
+                final String value = header.substring(colon + 1).trim();
+                if (name.equalsIgnoreCase("Content-Length")) {
+                    length = Integer.parseInt(value);
+                } else if (name.equalsIgnoreCase("Location")) {
+                    location = value;
+                }
+            }
+            final String answer = new String(open.readBody(length),
+                    StandardCharsets.UTF_8);
+            if (status >= 400) {
+                errors.increment();
+                return null;
+            }
+            return status == 201 ? location : answer;
+        } catch (IOException | RuntimeException ex) {
+            errors.increment();
+            connection.close();
+            return null;
+        } finally {
+            requests.increment();
+            latencyNanos.add(System.nanoTime() - start);
+        }
+    }
+}
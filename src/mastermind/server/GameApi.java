@@ -0,0 +1,582 @@
+package mastermind.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import mastermind.model.ColorCode;
+import mastermind.model.CompactGame;
+import mastermind.model.Game;
+import mastermind.model.GameSpec;
+import mastermind.model.GuessStrategy;
+import mastermind.model.MastermindGame;
+import mastermind.model.Rating;
+import mastermind.model.StrategyType;
+
+/**
+ * Offers games over HTTP with JSON bodies, for front-ends that do not want to
+ * speak the line protocol of the {@link GameServer}. Every game is a session
+ * with an id; the requests map onto the methods of {@link MastermindGame}:
+ * <ul>
+ * <li>{@code POST /games} with the optional members {@code colors},
+ * {@code slots}, {@code moves}, {@code machineGuessing} and {@code strategy}
+ * creates a game. If the machine is guessing, its first move is made. The
+ * answer is the board, its location is the path of the game.</li>
+ * <li>{@code GET /games/<id>} returns the board: the dimensions, the state
+ * ({@code open}, {@code solved}, {@code failed} or {@code cheated}), the
+ * version and every move with its rating.</li>
+ * <li>{@code POST /games/<id>/guess} with {@code code}, an array of colors,
+ * makes a human move and returns the board.</li>
+ * <li>{@code POST /games/<id>/rating} with {@code black} and {@code white}
+ * rates the last machine move, lets the machine make the next one and
+ * returns the board.</li>
+ * <li>{@code GET /games/<id>/secret} returns the secret once a human guesser
+ * has solved or failed.</li>
+ * <li>{@code DELETE /games/<id>} ends the session.</li>
+ * </ul>
+ * Errors are answered with a status and a member {@code error}: 400 for
+ * invalid requests, 404 for unknown games, 405 for unknown methods, 409 for
+ * requests the game does not allow now and 412 for stale versions. Sessions
+ * without requests for the idle timeout are removed.
+ * <p>
+ * Every answer about a game carries its version as {@code ETag}. A request
+ * with the header {@code If-Match} is only executed if the game still has
+ * that version, so a retried or doubled guess is rejected instead of made
+ * twice; the answer then has the current version in {@code version}. A
+ * failed guess or rating counts as a change too, its error answer carries
+ * the new version as {@code ETag}.
+ * <p>
+ * Requests are handled on virtual threads if the JDK has them. The games are
+ * kept in a {@link SessionRegistry}, so requests to the same game are
+ * executed one after another and requests to different games in parallel.
+ * <p>
+ * The JDK server writes the headers and the body of an answer separately, so
+ * with Nagle's algorithm every answer waits for the delayed acknowledgement
+ * of the client. The server only turns it off if the JVM is started with
+ * {@code -Dsun.net.httpserver.nodelay=true}, which the API cannot set for the
+ * whole process itself.
+ */
+public final class GameApi implements AutoCloseable {
+
+    /**
+     * Largest code space of a game, so no request can take a large part of
+     * the heap.
+     */
+    public static final int MAX_CODE_COUNT = 1 << 20;
+
+    /**
+     * Longest request body.
+     */
+    private static final int MAX_BODY = 4096;
+
+    private static final int DEFAULT_PORT = 8080;
+
+    private static final String PATH = "/games";
+
+    /**
+     * One instance of every strategy, shared by all games. The strategies
+     * keep no state between guesses.
+     */
+    private static final GuessStrategy[] STRATEGIES =
+            new GuessStrategy[StrategyType.values().length];
+
+    static {
+        for (StrategyType type : StrategyType.values()) {
+            STRATEGIES[type.ordinal()] = type.create();
+        }
+    }
+
+    private final InetSocketAddress address;
+    private final long idleMillis;
+    private final SessionRegistry registry = new SessionRegistry();
+    private final LongAdder requests = new LongAdder();
+    private HttpServer server;
+    private ExecutorService executor;
+    private ScheduledExecutorService sweeper;
+
+    /**
+     * Constructs an API that is not started yet.
+     *
+     * @param address
+     *            address to listen on
+     * @param idleMillis
+     *            time after which a session without requests is removed
+     */
+    public GameApi(InetSocketAddress address, long idleMillis) {
+        if (idleMillis <= 0) {
+            throw new IllegalArgumentException(
+                    "The idle timeout must be positive. Is " + idleMillis);
+        }
+        this.address = address;
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * Binds the address and starts serving requests in the background.
+     *
+     * @return the address that is bound, with the actual port if port 0 was
+     *         requested
+     * @throws IOException
+     *             if the address cannot be bound
+     */
+    public synchronized InetSocketAddress start() throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("API is already started.");
+        }
+        server = HttpServer.create(address, 1024);
+        server.createContext(PATH, this::handle);
+        executor = ThreadServer.newThreadPerTaskExecutor("GameApi-request");
+        server.setExecutor(executor);
+        server.start();
+        sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "GameApi-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long period = Math.max(1, Math.min(60000, idleMillis / 2));
+        sweeper.scheduleAtFixedRate(() -> registry.removeIdle(idleMillis),
+                period, period, TimeUnit.MILLISECONDS);
+        return server.getAddress();
+    }
+
+    /**
+     * Stops serving requests and removes all sessions.
+     */
+    @Override
+    public synchronized void close() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        sweeper.shutdownNow();
+        executor.shutdownNow();
+        registry.clear();
+    }
+
+    /**
+     * Returns the number of sessions.
+     *
+     * @return games that are not removed yet
+     */
+    public int getSessionCount() {
+        return registry.getSessionCount();
+    }
+
+    /**
+     * Returns the number of requests served so far.
+     *
+     * @return served requests
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * Runs the API until the process is killed and prints its statistics
+     * every ten seconds. Start the JVM with
+     * {@code -Dsun.net.httpserver.nodelay=true}, otherwise every answer is
+     * delayed by Nagle's algorithm.
+     *
+     * @param args
+     *            options {@code -port} and {@code -idle} (idle timeout in
+     *            seconds), each followed by its value
+     * @throws IOException
+     *             if the port cannot be bound
+     * @throws InterruptedException
+     *             if the main thread is interrupted
+     */
+    public static void main(String[] args)
+            throws IOException, InterruptedException {
+        int port = DEFAULT_PORT;
+        long idleMillis = GameServer.DEFAULT_IDLE_MILLIS;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "-port":
+                port = Integer.parseInt(value);
+                break;
+            case "-idle":
+                idleMillis = Long.parseLong(value) * 1000;
+                break;
+            default:
+                System.err.println("Unknown option " + args[i]);
+                return;
+            }
+        }
+
+        GameApi api = new GameApi(new InetSocketAddress(port), idleMillis);
+        System.out.println("Listening on " + api.start());
+        Runtime.getRuntime().addShutdownHook(new Thread(api::close));
+        while (true) {
+            Thread.sleep(10000);
+            System.out.println(api);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        int status;
+        String body;
+        try {
+            final String method = exchange.getRequestMethod();
+            final String[] parts = exchange.getRequestURI().getPath()
+                    .substring(PATH.length()).split("/");
+            // parts[0] is the empty string before the first slash
+            if (parts.length > 0 && !parts[0].isEmpty() || parts.length > 3) {
+                throw new NoSuchElementException(
+                        "Unknown resource " + exchange.getRequestURI());
+            } else if (parts.length <= 1) {
+                require(method, "POST");
+                final long id = registry.add(
+                        create(Json.parse(readBody(exchange))));
+                exchange.getResponseHeaders().set("Location", PATH + "/" + id);
+                status = 201;
+                body = registry.read(id, SessionRegistry.ANY_VERSION,
+                        (i, game, version) -> board(exchange, i, game,
+                                version));
+            } else {
+                final long id = parseId(parts[1]);
+                final int expectedVersion = expectedVersion(exchange);
+                final String request = method.equals("POST")
+                        ? readBody(exchange) : "";
+                body = handle(exchange, id, expectedVersion, method,
+                        parts.length > 2 ? parts[2] : "", request);
+                status = body == null ? 204 : 200;
+            }
+        } catch (SessionRegistry.StaleVersionException ex) {
+            status = 412;
+            body = new Json().put("error", ex.getMessage())
+                    .put("version", ex.getVersion()).toString();
+        } catch (IllegalArgumentException ex) {
+            status = 400;
+            body = error(ex);
+        } catch (NoSuchElementException ex) {
+            status = 404;
+            body = error(ex);
+        } catch (UnsupportedOperationException ex) {
+            status = 405;
+            body = error(ex);
+        } catch (IllegalStateException ex) {
+            status = 409;
+            body = error(ex);
+        } catch (RuntimeException ex) {
+            status = 500;
+            body = error(ex);
+        }
+        send(exchange, status, body);
+    }
+
+    /**
+     * Handles a request to a game in the registry.
+     *
+     * @return body of the answer, null for none
+     */
+    private String handle(HttpExchange exchange, long id,
+            int expectedVersion, String method, String resource,
+            String request) {
+        switch (resource) {
+        case "":
+            if (method.equals("DELETE")) {
+                registry.remove(id, expectedVersion);
+                return null;
+            }
+            require(method, "GET");
+            return registry.read(id, expectedVersion,
+                    (i, game, version) -> board(exchange, i, game, version));
+        case "guess":
+            require(method, "POST");
+            final Map<String, Object> code = Json.parse(request);
+            return registry.execute(id, expectedVersion,
+                    (i, game, version) -> {
+                        tag(exchange, version);
+                        guess(game, code);
+                        return board(exchange, i, game, version);
+                    });
+        case "rating":
+            require(method, "POST");
+            final Map<String, Object> rating = Json.parse(request);
+            return registry.execute(id, expectedVersion,
+                    (i, game, version) -> {
+                        tag(exchange, version);
+                        rate(game, rating);
+                        return board(exchange, i, game, version);
+                    });
+        case "secret":
+            require(method, "GET");
+            return registry.read(id, expectedVersion,
+                    (i, game, version) -> new Json()
+                            .put("secret", spikes(game.getSecret()))
+                            .toString());
+        default:
+            throw new NoSuchElementException("Unknown resource " + resource);
+        }
+    }
+
+    private static MastermindGame create(Map<String, Object> request) {
+        final int colors = intMember(request, "colors",
+                MastermindGame.NUMBER_COLORS);
+        final int slots = intMember(request, "slots",
+                MastermindGame.NUMBER_SLOTS);
+        final int maxMoves = intMember(request, "moves",
+                MastermindGame.MAX_MOVES);
+        final GameSpec spec = new GameSpec(colors, slots, maxMoves);
+        if (spec.getCodeCount() > MAX_CODE_COUNT) {
+            throw new IllegalArgumentException("At most " + MAX_CODE_COUNT
+                    + " color codes are served. Are " + spec.getCodeCount());
+        }
+        final Object machine = request.getOrDefault("machineGuessing",
+                Boolean.FALSE);
+        if (!(machine instanceof Boolean)) {
+            throw new IllegalArgumentException(
+                    "machineGuessing must be a boolean.");
+        }
+        final Object name = request.getOrDefault("strategy",
+                StrategyType.FIRST_CONSISTENT.create().getName());
+        final StrategyType type = name instanceof String
+                ? StrategyType.byName((String) name) : null;
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown guesser " + name);
+        }
+
+        // Small games only keep their history, as many sessions may be idle
+        final GuessStrategy strategy = STRATEGIES[type.ordinal()];
+        final MastermindGame game = spec.getCodeCount()
+                <= CompactGame.MAX_CODE_COUNT
+                        ? new CompactGame(spec, (Boolean) machine, strategy)
+                        : new Game(spec, (Boolean) machine, strategy);
+        if (game.isMachineGuessing()) {
+            game.machineMove();
+        }
+        return game;
+    }
+
+    private static void guess(MastermindGame game,
+            Map<String, Object> request) {
+        final GameSpec spec = game.getSpec();
+        final Object member = request.get("code");
+        if (!(member instanceof int[])
+                || ((int[]) member).length != spec.getSlots()) {
+            throw new IllegalArgumentException("code must be an array of "
+                    + spec.getSlots() + " colors.");
+        }
+        final int[] colors = (int[]) member;
+        final byte[] spikes = new byte[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            if (colors[i] < 0 || colors[i] >= spec.getColors()) {
+                throw new IllegalArgumentException(colors[i]
+                        + " is not a number from 0 to "
+                        + (spec.getColors() - 1) + ".");
+            }
+            spikes[i] = (byte) colors[i];
+        }
+        game.humanMove(ColorCode.of(spec, spikes));
+    }
+
+    private static void rate(MastermindGame game,
+            Map<String, Object> request) {
+        final Rating rating = Rating.valueOf(game.getSpec(),
+                requiredInt(request, "black"), requiredInt(request, "white"));
+        if (!game.isMachineGuessing()) {
+            throw new IllegalStateException(
+                    "Human is guesser, so there is no move to rate.");
+        } else if (!state(game).equals("open")) {
+            throw new IllegalStateException("The game is over.");
+        }
+        final int last = game.getMoveCount() - 1;
+        game.processEval(game.getGameState(last), rating);
+        if (!rating.isAllBlack() && last + 1 < game.getSpec().getMaxMoves()) {
+            // Without candidates the machine makes no move, which shows as
+            // cheated
+            game.machineMove();
+        }
+    }
+
+    /**
+     * Sets the version of a game as entity tag. Changing requests set it
+     * before they touch the game, as the version is incremented even if
+     * they fail.
+     */
+    private static void tag(HttpExchange exchange, int version) {
+        exchange.getResponseHeaders().set("ETag", "\"" + version + "\"");
+    }
+
+    /**
+     * Describes a game and sets its version as entity tag. Only within an
+     * operation of the registry.
+     */
+    private static String board(HttpExchange exchange, long id,
+            MastermindGame game, int version) {
+        tag(exchange, version);
+        final GameSpec spec = game.getSpec();
+        final Json[] moves = new Json[game.getMoveCount()];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = new Json().put("code",
+                    spikes(game.getGameState(i)));
+            final Rating rating = game.getRating(i);
+            if (rating != null) {
+                moves[i].put("black", rating.getBlack())
+                        .put("white", rating.getWhite());
+            }
+        }
+        return new Json().put("id", Long.toString(id))
+                .put("version", version)
+                .put("colors", spec.getColors())
+                .put("slots", spec.getSlots())
+                .put("maxMoves", spec.getMaxMoves())
+                .put("machineGuessing", game.isMachineGuessing())
+                .put("strategy", strategy(game).getName())
+                .put("state", state(game))
+                .put("moves", moves).toString();
+    }
+
+    /**
+     * Returns the state of a game. The machine rates its moves only when
+     * asked to, so a rated last move of an open game means that the machine
+     * had no candidates left.
+     */
+    private static String state(MastermindGame game) {
+        final int moveCount = game.getMoveCount();
+        final Rating last = moveCount == 0 ? null
+                : game.getRating(moveCount - 1);
+        if (last != null && last.isAllBlack()) {
+            return "solved";
+        } else if (last != null
+                && moveCount == game.getSpec().getMaxMoves()) {
+            return "failed";
+        } else if (last != null && game.isMachineGuessing()) {
+            return "cheated";
+        }
+        return "open";
+    }
+
+    private static GuessStrategy strategy(MastermindGame game) {
+        return game instanceof CompactGame
+                ? ((CompactGame) game).getStrategy()
+                : ((Game) game).getStrategy();
+    }
+
+    private static byte[] spikes(ColorCode code) {
+        final byte[] spikes = new byte[code.getSpec().getSlots()];
+        for (int i = 0; i < spikes.length; i++) {
+            spikes[i] = code.get(i);
+        }
+        return spikes;
+    }
+
+    private static long parseId(String id) {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException ex) {
+            throw new NoSuchElementException("Unknown game " + id);
+        }
+    }
+
+    /**
+     * Reads the version of the header {@code If-Match}, which is an entity
+     * tag as sent in {@code ETag} or {@code *}.
+     */
+    private static int expectedVersion(HttpExchange exchange) {
+        final String tag = exchange.getRequestHeaders().getFirst("If-Match");
+        if (tag == null || tag.trim().equals("*")) {
+            return SessionRegistry.ANY_VERSION;
+        }
+        final String value = tag.trim().replaceFirst("^W/", "");
+        try {
+            final int version = Integer.parseInt(value.startsWith("\"")
+                    && value.endsWith("\"") && value.length() > 1
+                            ? value.substring(1, value.length() - 1)
+                            : value);
+            if (version >= 0) {
+                return version;
+            }
+        } catch (NumberFormatException ex) {
+            // Rejected below
+        }
+        throw new IllegalArgumentException("If-Match must be a version of "
+                + "the game. Is " + tag);
+    }
+
+    private static int intMember(Map<String, Object> request, String name,
+            int defaultValue) {
+        return request.containsKey(name) ? requiredInt(request, name)
+                : defaultValue;
+    }
+
+    private static int requiredInt(Map<String, Object> request,
+            String name) {
+        final Object value = request.get(name);
+        if (!(value instanceof Long)
+                || (Long) value != ((Long) value).intValue()) {
+            throw new IllegalArgumentException(name + " must be an integer.");
+        }
+        return ((Long) value).intValue();
+    }
+
+    private static void require(String method, String expected) {
+        if (!method.equals(expected)) {
+            throw new UnsupportedOperationException(
+                    method + " is not allowed here, only " + expected + ".");
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            // One byte more than allowed tells a body that is too long
+            final byte[] bytes = new byte[MAX_BODY + 1];
+            int length = 0;
+            int read;
+            while (length < bytes.length && (read = in.read(bytes, length,
+                    bytes.length - length)) >= 0) {
+                length += read;
+            }
+            if (length > MAX_BODY) {
+                throw new IllegalArgumentException("Request body is longer "
+                        + "than " + MAX_BODY + " bytes.");
+            }
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String error(RuntimeException ex) {
+        return new Json().put("error", ex.getMessage()).toString();
+    }
+
+    private static void send(HttpExchange exchange, int status, String body)
+            throws IOException {
+        // Drains a body that was not read, or the connection is not kept
+        // alive after an answer without a body
+        exchange.getRequestBody().close();
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type",
+                "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d sessions, %d requests, %d stale",
+                getSessionCount(), getRequestCount(),
+                registry.getStaleCount());
+    }
+}
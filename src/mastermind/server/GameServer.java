@@ -0,0 +1,267 @@
+package mastermind.server;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import mastermind.shell.Shell;
+
+/**
+ * Serves the line protocol of the {@link Shell} to many players over TCP.
+ * Every connection is a session with its own shell and so its own game.
+ * Answers are followed by the prompt, just as on the console, so a client
+ * knows that a command is done when it reads {@value Shell#PROMPT}.
+ * <p>
+ * Sessions that send no command for the idle timeout are closed. A session
+ * that does not read its answers is not read from anymore until it does, so
+ * a slow client cannot make the server buffer without limit.
+ * <p>
+ * There are two implementations, see {@link Mode}.
+ */
+public abstract class GameServer implements AutoCloseable {
+
+    /**
+     * Longest command line a client may send.
+     */
+    static final int MAX_LINE = 1024;
+
+    /**
+     * Largest code space of a game, so no session can take a large part of
+     * the heap.
+     */
+    public static final int MAX_CODE_COUNT = 1 << 20;
+
+    /**
+     * Default time after which a session without commands is closed.
+     */
+    public static final long DEFAULT_IDLE_MILLIS = 5 * 60 * 1000;
+
+    /**
+     * Port the server listens on if no other is given.
+     */
+    static final int DEFAULT_PORT = 4711;
+
+    /**
+     * Sent to a session that is closed for being idle.
+     */
+    static final String TIMEOUT_MESSAGE = "Session timed out.";
+
+    /**
+     * How the connections are served.
+     */
+    public enum Mode {
+        /**
+         * One selector thread does the I/O of all connections; the commands
+         * are executed by a pool with a thread per core.
+         */
+        SELECTOR,
+        /**
+         * Every connection has a thread that blocks on its socket. Virtual
+         * threads are used if the JDK has them.
+         */
+        THREADS
+    }
+
+    private final InetSocketAddress address;
+    private final long idleMillis;
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder commands = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    /**
+     * Constructs a server that is not started yet.
+     *
+     * @param address
+     *            address to listen on
+     * @param idleMillis
+     *            time after which a session without commands is closed
+     */
+    GameServer(InetSocketAddress address, long idleMillis) {
+        if (idleMillis <= 0) {
+            throw new IllegalArgumentException(
+                    "The idle timeout must be positive. Is " + idleMillis);
+        }
+        this.address = address;
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * Creates a server.
+     *
+     * @param mode
+     *            how the connections are served
+     * @param address
+     *            address to listen on
+     * @param idleMillis
+     *            time after which a session without commands is closed
+     * @return server that is not started yet
+     */
+    public static GameServer create(Mode mode, InetSocketAddress address,
+            long idleMillis) {
+        switch (mode) {
+        case SELECTOR:
+            return new SelectorServer(address, idleMillis);
+        case THREADS:
+            return new ThreadServer(address, idleMillis);
+        default:
+            throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+    }
+
+    /**
+     * Binds the address and starts accepting connections in the background.
+     *
+     * @return the address that is bound, with the actual port if port 0 was
+     *         requested
+     * @throws IOException
+     *             if the address cannot be bound
+     */
+    public abstract InetSocketAddress start() throws IOException;
+
+    /**
+     * Stops accepting connections and closes all sessions.
+     */
+    @Override
+    public abstract void close();
+
+    /**
+     * Returns the number of sessions that are open now.
+     *
+     * @return open sessions
+     */
+    public int getSessionCount() {
+        return sessions.get();
+    }
+
+    /**
+     * Returns the number of connections accepted so far.
+     *
+     * @return accepted connections
+     */
+    public long getAcceptedCount() {
+        return accepted.sum();
+    }
+
+    /**
+     * Returns the number of commands executed so far.
+     *
+     * @return executed commands
+     */
+    public long getCommandCount() {
+        return commands.sum();
+    }
+
+    /**
+     * Returns the number of sessions closed for being idle.
+     *
+     * @return timed out sessions
+     */
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    /**
+     * Runs a server until the process is killed and prints its statistics
+     * every ten seconds.
+     *
+     * @param args
+     *            options {@code -port}, {@code -mode} ({@code selector} or
+     *            {@code threads}) and {@code -idle} (idle timeout in
+     *            seconds), each followed by its value
+     * @throws IOException
+     *             if the port cannot be bound
+     * @throws InterruptedException
+     *             if the main thread is interrupted
+     */
+    public static void main(String[] args)
+            throws IOException, InterruptedException {
+        int port = DEFAULT_PORT;
+        Mode mode = Mode.SELECTOR;
+        long idleMillis = DEFAULT_IDLE_MILLIS;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "-port":
+                port = Integer.parseInt(value);
+                break;
+            case "-mode":
+                mode = Mode.valueOf(value.toUpperCase());
+                break;
+            case "-idle":
+                idleMillis = Long.parseLong(value) * 1000;
+                break;
+            default:
+                System.err.println("Unknown option " + args[i]);
+                return;
+            }
+        }
+
+        GameServer server = create(mode, new InetSocketAddress(port),
+                idleMillis);
+        System.out.println("Listening on " + server.start() + " ("
+                + mode.name().toLowerCase() + ")");
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        while (true) {
+            Thread.sleep(10000);
+            System.out.println(server);
+        }
+    }
+
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    long getIdleMillis() {
+        return idleMillis;
+    }
+
+    /**
+     * Executes one command of a session and counts it. Errors of the game
+     * are answered instead of ending the session.
+     *
+     * @param shell
+     *            shell of the session
+     * @param out
+     *            output of the shell, the prompt is written to it afterwards
+     * @param line
+     *            command line without the line terminator
+     * @return false if the session is over
+     */
+    boolean execute(Shell shell, PrintWriter out, String line) {
+        commands.increment();
+        boolean open;
+        try {
+            open = shell.execute(line);
+        } catch (RuntimeException ex) {
+            out.println("Error! " + ex.getMessage());
+            open = true;
+        }
+        if (open) {
+            out.print(Shell.PROMPT);
+        }
+        return open;
+    }
+
+    void sessionOpened() {
+        accepted.increment();
+        sessions.incrementAndGet();
+    }
+
+    void sessionClosed(boolean timedOut) {
+        sessions.decrementAndGet();
+        if (timedOut) {
+            timeouts.increment();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d sessions open, %d accepted, %d commands, "
+                + "%d timed out", getSessionCount(), getAcceptedCount(),
+                getCommandCount(), getTimeoutCount());
+    }
+}
@@ -0,0 +1,322 @@
+package mastermind.server;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes and reads the small JSON objects of the {@link GameApi}. An object
+ * is written member by member into one builder. Only flat objects are read:
+ * their values are numbers, strings, booleans, null or arrays of integers.
+ */
+final class Json {
+
+    private final StringBuilder sb = new StringBuilder(128).append('{');
+
+    /**
+     * Appends a member with a number.
+     *
+     * @param name
+     *            name of the member
+     * @param value
+     *            number
+     * @return this object
+     */
+    Json put(String name, long value) {
+        return name(name).append(value);
+    }
+
+    /**
+     * Appends a member with a boolean.
+     *
+     * @param name
+     *            name of the member
+     * @param value
+     *            boolean
+     * @return this object
+     */
+    Json put(String name, boolean value) {
+        return name(name).append(value);
+    }
+
+    /**
+     * Appends a member with a string.
+     *
+     * @param name
+     *            name of the member
+     * @param value
+     *            string, may be null
+     * @return this object
+     */
+    Json put(String name, String value) {
+        name(name);
+        if (value == null) {
+            sb.append("null");
+        } else {
+            quote(value);
+        }
+        return this;
+    }
+
+    /**
+     * Appends a member with an array of numbers.
+     *
+     * @param name
+     *            name of the member
+     * @param values
+     *            numbers
+     * @return this object
+     */
+    Json put(String name, byte[] values) {
+        name(name).sb.append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(values[i]);
+        }
+        sb.append(']');
+        return this;
+    }
+
+    /**
+     * Appends a member with an array of objects.
+     *
+     * @param name
+     *            name of the member
+     * @param values
+     *            objects
+     * @return this object
+     */
+    Json put(String name, Json[] values) {
+        name(name).sb.append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(values[i]);
+        }
+        sb.append(']');
+        return this;
+    }
+
+    /**
+     * Returns the object.
+     *
+     * @return JSON text
+     */
+    @Override
+    public String toString() {
+        return sb + "}";
+    }
+
+    private Json name(String name) {
+        if (sb.length() > 1) {
+            sb.append(',');
+        }
+        quote(name);
+        sb.append(':');
+        return this;
+    }
+
+    private Json append(Object value) {
+        sb.append(value);
+        return this;
+    }
+
+    private void quote(String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < ' ') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Reads a flat object. Numbers are {@link Long}s, arrays are
+     * {@code int[]}.
+     *
+     * @param text
+     *            JSON text; empty text is an empty object
+     * @return members by name
+     * @throws IllegalArgumentException
+     *             if the text is no flat object
+     */
+    static Map<String, Object> parse(String text) {
+        return new Parser(text).object();
+    }
+
+    /**
+     * Reads one object, character by character.
+     */
+    private static final class Parser {
+
+        private final String text;
+        private int pos;
+
+        private Parser(String text) {
+            this.text = text;
+        }
+
+        private Map<String, Object> object() {
+            final Map<String, Object> members = new HashMap<>();
+            skipSpace();
+            if (pos == text.length()) {
+                return members;
+            }
+            expect('{');
+            if (!consume('}')) {
+                do {
+                    String name = string();
+                    expect(':');
+                    members.put(name, value());
+                } while (consume(','));
+                expect('}');
+            }
+            skipSpace();
+            if (pos != text.length()) {
+                throw error("end of text");
+            }
+            return members;
+        }
+
+        private Object value() {
+            skipSpace();
+            if (pos == text.length()) {
+                throw error("value");
+            }
+            char c = text.charAt(pos);
+            if (c == '"') {
+                return string();
+            } else if (c == '[') {
+                return array();
+            } else if (text.startsWith("true", pos)) {
+                pos += 4;
+                return Boolean.TRUE;
+            } else if (text.startsWith("false", pos)) {
+                pos += 5;
+                return Boolean.FALSE;
+            } else if (text.startsWith("null", pos)) {
+                pos += 4;
+                return null;
+            }
+            return number();
+        }
+
+        private int[] array() {
+            expect('[');
+            int[] values = new int[8];
+            int size = 0;
+            if (!consume(']')) {
+                do {
+                    long value = number();
+                    if (value != (int) value) {
+                        throw error("integer");
+                    } else if (size == values.length) {
+                        values = Arrays.copyOf(values, 2 * size);
+                    }
+                    values[size++] = (int) value;
+                } while (consume(','));
+                expect(']');
+            }
+            return Arrays.copyOf(values, size);
+        }
+
+        private long number() {
+            skipSpace();
+            final int start = pos;
+            if (pos < text.length() && text.charAt(pos) == '-') {
+                pos++;
+            }
+            while (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+                pos++;
+            }
+            try {
+                return Long.parseLong(text.substring(start, pos));
+            } catch (NumberFormatException ex) {
+                throw error("integer");
+            }
+        }
+
+        private String string() {
+            expect('"');
+            final StringBuilder sb = new StringBuilder();
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return sb.toString();
+                } else if (c != '\\') {
+                    sb.append(c);
+                } else if (pos < text.length()) {
+                    c = text.charAt(pos++);
+                    switch (c) {
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'u':
+                        if (pos + 4 > text.length()) {
+                            throw error("escape");
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(
+                                    text.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException ex) {
+                            throw error("escape");
+                        }
+                        pos += 4;
+                        break;
+                    default:
+                        sb.append(c);
+                    }
+                }
+            }
+            throw error("end of string");
+        }
+
+        private void expect(char c) {
+            if (!consume(c)) {
+                throw error("'" + c + "'");
+            }
+        }
+
+        private boolean consume(char c) {
+            skipSpace();
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipSpace() {
+            while (pos < text.length()
+                    && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException error(String expected) {
+            return new IllegalArgumentException("Invalid JSON: expected "
+                    + expected + " at position " + pos + ".");
+        }
+    }
+}
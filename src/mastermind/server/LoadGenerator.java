@@ -0,0 +1,297 @@
+package mastermind.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import mastermind.model.GameSpec;
+import mastermind.model.MastermindGame;
+import mastermind.shell.Shell;
+
+/**
+ * Plays against a {@link GameServer} with many sessions from one thread and
+ * reports every second how many sessions are held and how many commands per
+ * second are answered.
+ * <p>
+ * Every session guesses random color codes and starts a new game when one is
+ * over. A command is answered when the prompt arrives. Sessions may wait a
+ * think time between an answer and their next command, so that many sessions
+ * can be held at a modest command rate, like human players.
+ */
+public final class LoadGenerator {
+
+    /**
+     * A session of the load generator.
+     */
+    private static final class Client {
+
+        private final SocketChannel channel;
+        private final ByteBuffer input = ByteBuffer.allocate(16 * 1024);
+        private final StringBuilder answer = new StringBuilder();
+        private ByteBuffer output;
+        private long sentNanos;
+        private long dueMillis;
+        private boolean gameOver;
+        private boolean connected;
+        private boolean dropped;
+
+        private Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final GameSpec spec;
+    private final long thinkMillis;
+    private final Random random;
+    private final Selector selector;
+    private final PriorityQueue<Client> waiting = new PriorityQueue<>(
+            (a, b) -> Long.compare(a.dueMillis, b.dueMillis));
+    private int held;
+    private int lost;
+    private long commands;
+    private long errors;
+    private long latencyNanos;
+
+    private LoadGenerator(GameSpec spec, long thinkMillis, long seed)
+            throws IOException {
+        this.spec = spec;
+        this.thinkMillis = thinkMillis;
+        this.random = new Random(seed);
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Runs the load generator and prints the statistics.
+     *
+     * @param args
+     *            options {@code -host}, {@code -port}, {@code -sessions},
+     *            {@code -seconds}, {@code -think} (milliseconds between an
+     *            answer and the next command), {@code -colors},
+     *            {@code -slots} and {@code -seed}, each followed by its value
+     * @throws IOException
+     *             if the selector cannot be opened
+     */
+    public static void main(String[] args) throws IOException {
+        String host = "localhost";
+        int port = GameServer.DEFAULT_PORT;
+        int sessions = 1000;
+        int seconds = 10;
+        long thinkMillis = 0;
+        int colors = MastermindGame.NUMBER_COLORS;
+        int slots = MastermindGame.NUMBER_SLOTS;
+        long seed = System.nanoTime();
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "-host":
+                host = value;
+                break;
+            case "-port":
+                port = Integer.parseInt(value);
+                break;
+            case "-sessions":
+                sessions = Integer.parseInt(value);
+                break;
+            case "-seconds":
+                seconds = Integer.parseInt(value);
+                break;
+            case "-think":
+                thinkMillis = Long.parseLong(value);
+                break;
+            case "-colors":
+                colors = Integer.parseInt(value);
+                break;
+            case "-slots":
+                slots = Integer.parseInt(value);
+                break;
+            case "-seed":
+                seed = Long.parseLong(value);
+                break;
+            default:
+                System.err.println("Unknown option " + args[i]);
+                return;
+            }
+        }
+
+        GameSpec spec = new GameSpec(colors, slots, MastermindGame.MAX_MOVES);
+        LoadGenerator generator = new LoadGenerator(spec, thinkMillis, seed);
+        generator.connect(new InetSocketAddress(host, port), sessions);
+        generator.run(seconds * 1000L);
+    }
+
+    private void connect(InetSocketAddress address, int sessions)
+            throws IOException {
+        for (int i = 0; i < sessions; i++) {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Client client = new Client(channel);
+            // The first command starts a game of the requested spec
+            client.gameOver = true;
+            channel.register(selector, SelectionKey.OP_CONNECT, client);
+            channel.connect(address);
+        }
+    }
+
+    private void run(long millis) throws IOException {
+        final long start = System.currentTimeMillis();
+        final long end = start + millis;
+        long nextReport = start + 1000;
+        long reportedCommands = 0;
+        System.out.printf("%6s %8s %8s %12s %12s%n", "s", "held", "lost",
+                "commands/s", "latency ms");
+        while (true) {
+            long now = System.currentTimeMillis();
+            if (now >= end) {
+                break;
+            }
+            while (!waiting.isEmpty() && waiting.peek().dueMillis <= now) {
+                send(waiting.poll());
+            }
+            long timeout = Math.min(nextReport, end) - now;
+            if (!waiting.isEmpty()) {
+                timeout = Math.min(timeout, waiting.peek().dueMillis - now);
+            }
+            selector.select(Math.max(1, timeout));
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                handle(key, (Client) key.attachment());
+            }
+            now = System.currentTimeMillis();
+            if (now >= nextReport) {
+                long interval = commands - reportedCommands;
+                System.out.printf("%6d %8d %8d %12d %12.3f%n",
+                        (now - start) / 1000, held, lost, interval,
+                        interval == 0 ? 0.0 : latencyNanos / 1e6 / interval);
+                reportedCommands = commands;
+                latencyNanos = 0;
+                nextReport += 1000;
+            }
+        }
+        System.out.printf("Held %d sessions, lost %d, %d commands "
+                + "(%.0f/s), %d errors%n", held, lost, commands,
+                commands * 1000.0 / millis, errors);
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    private void handle(SelectionKey key, Client client) {
+        try {
+            if (!key.isValid()) {
+                return;
+            } else if (key.isConnectable()) {
+                client.channel.finishConnect();
+                client.connected = true;
+                held++;
+                key.interestOps(SelectionKey.OP_READ);
+                return;
+            }
+            if (key.isWritable()) {
+                write(client);
+            }
+            if (key.isReadable()) {
+                read(client);
+            }
+        } catch (IOException ex) {
+            drop(client, key);
+        }
+    }
+
+    private void read(Client client) throws IOException {
+        SelectionKey key = client.channel.keyFor(selector);
+        if (client.channel.read(client.input) < 0) {
+            drop(client, key);
+            return;
+        }
+        client.input.flip();
+        client.answer.append(StandardCharsets.UTF_8.decode(client.input));
+        client.input.clear();
+        final StringBuilder answer = client.answer;
+        final int length = answer.length() - Shell.PROMPT.length();
+        if (length < 0 || answer.indexOf(Shell.PROMPT, length) != length) {
+            return; // The answer is not complete yet
+        }
+        if (client.sentNanos != 0) {
+            commands++;
+            latencyNanos += System.nanoTime() - client.sentNanos;
+            if (answer.indexOf("Error!") >= 0) {
+                errors++;
+            }
+            client.gameOver = answer.indexOf("Congratulations") >= 0
+                    || answer.indexOf("No more moves") >= 0
+                    || answer.indexOf("Error!") >= 0;
+        }
+        answer.setLength(0);
+        if (thinkMillis == 0) {
+            send(client);
+        } else {
+            client.dueMillis = System.currentTimeMillis() + thinkMillis;
+            waiting.add(client);
+        }
+    }
+
+    private void send(Client client) {
+        if (client.dropped) {
+            return;
+        }
+        final String command;
+        if (client.gameOver) {
+            command = "new " + spec.getColors() + " " + spec.getSlots();
+            client.gameOver = false;
+        } else {
+            StringBuilder move = new StringBuilder("move");
+            for (int i = 0; i < spec.getSlots(); i++) {
+                move.append(' ').append(random.nextInt(spec.getColors()));
+            }
+            command = move.toString();
+        }
+        client.output = ByteBuffer.wrap((command + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        client.sentNanos = System.nanoTime();
+        try {
+            write(client);
+        } catch (IOException ex) {
+            drop(client, client.channel.keyFor(selector));
+        }
+    }
+
+    private void write(Client client) throws IOException {
+        SelectionKey key = client.channel.keyFor(selector);
+        client.channel.write(client.output);
+        key.interestOps(client.output.hasRemaining()
+                ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                : SelectionKey.OP_READ);
+    }
+
+    private void drop(Client client, SelectionKey key) {
+        if (client.dropped) {
+            return;
+        }
+        client.dropped = true;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            client.channel.close();
+        } catch (IOException ex) {
+            // Nothing left to do
+        }
+        if (client.connected) {
+            held--;
+        }
+        lost++;
+    }
+}
@@ -0,0 +1,239 @@
+package mastermind.server;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import mastermind.model.ColorCode;
+import mastermind.model.CompactGame;
+import mastermind.model.GameSpec;
+import mastermind.model.GuessStrategy;
+import mastermind.model.MastermindGame;
+import mastermind.model.Rating;
+import mastermind.model.StrategyType;
+
+/**
+ * Plays many sessions of a {@link SessionRegistry} from more and more
+ * threads, doubling their number up to the limit, and reports the operations
+ * per second and the speedup over one thread.
+ * <p>
+ * Every thread picks random sessions. Half of the operations read the board,
+ * the others guess with the version just read. A part of the guesses is sent
+ * again with the same version, as a front-end does that retries, and must be
+ * rejected as stale. A finished game is removed and replaced by a new one,
+ * so threads also meet sessions that are gone.
+ * <p>
+ * With {@code -stripes 1} all sessions share one lock, which shows what the
+ * stripes are for.
+ */
+public final class RegistryLoadTest {
+
+    private final SessionRegistry registry;
+    private final GameSpec spec;
+    private final GuessStrategy strategy =
+            StrategyType.FIRST_CONSISTENT.create();
+    private final AtomicLongArray ids;
+    private final int retryPercent;
+    private final LongAdder operations = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder appliedRetries = new LongAdder();
+    private final LongAdder gone = new LongAdder();
+    private final LongAdder games = new LongAdder();
+    private volatile boolean running;
+
+    private RegistryLoadTest(SessionRegistry registry, GameSpec spec,
+            int sessions, int retryPercent) {
+        this.registry = registry;
+        this.spec = spec;
+        this.ids = new AtomicLongArray(sessions);
+        this.retryPercent = retryPercent;
+        for (int i = 0; i < sessions; i++) {
+            ids.set(i, registry.add(newGame()));
+        }
+    }
+
+    /**
+     * Runs the load test and prints the statistics.
+     *
+     * @param args
+     *            options {@code -sessions}, {@code -threads} (most threads),
+     *            {@code -seconds} (per number of threads), {@code -colors},
+     *            {@code -slots}, {@code -stripes} and {@code -retries}
+     *            (percent of guesses sent twice), each followed by its value
+     * @throws InterruptedException
+     *             if the main thread is interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int sessions = 100000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int seconds = 3;
+        int colors = MastermindGame.NUMBER_COLORS;
+        int slots = MastermindGame.NUMBER_SLOTS;
+        int stripes = 0;
+        int retryPercent = 10;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "-sessions":
+                sessions = Integer.parseInt(value);
+                break;
+            case "-threads":
+                threads = Integer.parseInt(value);
+                break;
+            case "-seconds":
+                seconds = Integer.parseInt(value);
+                break;
+            case "-colors":
+                colors = Integer.parseInt(value);
+                break;
+            case "-slots":
+                slots = Integer.parseInt(value);
+                break;
+            case "-stripes":
+                stripes = Integer.parseInt(value);
+                break;
+            case "-retries":
+                retryPercent = Integer.parseInt(value);
+                break;
+            default:
+                System.err.println("Unknown option " + args[i]);
+                return;
+            }
+        }
+
+        SessionRegistry registry = stripes > 0 ? new SessionRegistry(stripes)
+                : new SessionRegistry();
+        RegistryLoadTest test = new RegistryLoadTest(registry,
+                new GameSpec(colors, slots, MastermindGame.MAX_MOVES),
+                sessions, retryPercent);
+        System.out.println(sessions + " sessions, "
+                + Runtime.getRuntime().availableProcessors() + " cores");
+        System.out.printf("%8s %14s %8s %10s %12s %8s%n", "threads",
+                "operations/s", "speedup", "stale", "retries ok", "gone");
+        double single = 0;
+        for (int n = 1; n <= threads; n = n < threads && 2 * n > threads
+                ? threads : 2 * n) {
+            double rate = test.run(n, seconds);
+            if (n == 1) {
+                single = rate;
+            }
+            System.out.printf("%8d %14.0f %8.2f %10d %12d %8d%n", n, rate,
+                    rate / single, registry.getStaleCount(),
+                    test.appliedRetries.sum(), test.gone.sum());
+        }
+        System.out.println(test.games.sum() + " games finished, "
+                + test.retries.sum() + " retries sent, " + registry);
+    }
+
+    /**
+     * Runs the threads for a while, after a warmup of a second.
+     *
+     * @return operations per second
+     */
+    private double run(int threadCount, int seconds)
+            throws InterruptedException {
+        running = true;
+        Thread[] players = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            players[i] = new Thread(this::play, "RegistryLoadTest-" + i);
+            players[i].start();
+        }
+        Thread.sleep(1000);
+        operations.reset();
+        final long start = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        final long count = operations.sum();
+        final long elapsed = System.nanoTime() - start;
+        running = false;
+        for (Thread player : players) {
+            player.join();
+        }
+        return count * 1e9 / elapsed;
+    }
+
+    private void play() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (running) {
+            final int slot = random.nextInt(ids.length());
+            final long id = ids.get(slot);
+            try {
+                if (random.nextBoolean()) {
+                    registry.read(id, SessionRegistry.ANY_VERSION,
+                            (i, game, version) -> board(game));
+                } else {
+                    guess(slot, id, random);
+                }
+            } catch (NoSuchElementException ex) {
+                gone.increment();
+            }
+            operations.increment();
+        }
+    }
+
+    private void guess(int slot, long id, ThreadLocalRandom random) {
+        final int version = registry.getVersion(id);
+        final ColorCode code = ColorCode.of(spec,
+                random.nextInt(spec.getCodeCount()));
+        final boolean over;
+        try {
+            over = registry.execute(id, version,
+                    (i, game, next) -> move(game, code));
+        } catch (SessionRegistry.StaleVersionException ex) {
+            return; // Another thread guessed in between
+        }
+        if (over) {
+            // Throws for all but one of the threads that saw the end
+            registry.remove(id, SessionRegistry.ANY_VERSION);
+            ids.compareAndSet(slot, id, registry.add(newGame()));
+            games.increment();
+        } else if (random.nextInt(100) < retryPercent) {
+            retries.increment();
+            try {
+                registry.execute(id, version,
+                        (i, game, next) -> move(game, code));
+                appliedRetries.increment();
+            } catch (SessionRegistry.StaleVersionException ex) {
+                // Rejected as it should be
+            }
+            operations.increment();
+        }
+    }
+
+    private MastermindGame newGame() {
+        return new CompactGame(spec, false, strategy);
+    }
+
+    /**
+     * Guesses unless the game was finished by another thread, which has not
+     * replaced it yet.
+     *
+     * @return true if the game is over
+     */
+    private static boolean move(MastermindGame game, ColorCode code) {
+        if (game.getMoveCount() == 0 || !isOver(game)) {
+            game.humanMove(code);
+        }
+        return isOver(game);
+    }
+
+    private static boolean isOver(MastermindGame game) {
+        final int moveCount = game.getMoveCount();
+        final Rating last = game.getRating(moveCount - 1);
+        return last.isAllBlack()
+                || moveCount == game.getSpec().getMaxMoves();
+    }
+
+    /**
+     * Reads the moves as the board of the API does.
+     */
+    private static int board(MastermindGame game) {
+        int sum = 0;
+        for (int i = 0; i < game.getMoveCount(); i++) {
+            sum += game.getGameState(i).index()
+                    + game.getRating(i).getBlack();
+        }
+        return sum;
+    }
+}
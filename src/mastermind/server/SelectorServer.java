@@ -0,0 +1,422 @@
+package mastermind.server;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import mastermind.shell.Shell;
+
+/**
+ * Serves all connections with one selector thread. The selector thread only
+ * reads lines and writes answers; the commands may take long for large games,
+ * so they are executed by a pool with a thread per core. A session executes
+ * one command at a time in the order they arrived.
+ * <p>
+ * A session is not read from while it has {@value #MAX_QUEUED_LINES} lines
+ * queued or {@value #MAX_PENDING_OUTPUT} bytes of answers its client has not
+ * taken yet. Its socket buffers then fill up and the client has to wait.
+ */
+final class SelectorServer extends GameServer {
+
+    /**
+     * Largest number of commands a session may have waiting.
+     */
+    static final int MAX_QUEUED_LINES = 16;
+
+    /**
+     * Largest number of bytes of answers a session may have waiting.
+     */
+    static final int MAX_PENDING_OUTPUT = 64 * 1024;
+
+    /**
+     * Longest time between two sweeps for idle sessions.
+     */
+    private static final long MAX_SWEEP_MILLIS = 1000;
+
+    /**
+     * Pause after a failed accept, for example when the process is out of
+     * file descriptors. The pending connection keeps the server socket ready,
+     * so selecting again at once would spin.
+     */
+    private static final long ACCEPT_BACKOFF_MILLIS = 100;
+
+    /**
+     * State of a connection. Only the selector thread touches it, except for
+     * the shell and its output, which belong to the worker while the session
+     * is busy.
+     */
+    private static final class Session {
+
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final StringWriter text = new StringWriter();
+        private final PrintWriter out = new PrintWriter(text);
+        private final Shell shell = new Shell(out, MAX_CODE_COUNT);
+        private final ByteBuffer input = ByteBuffer.allocate(MAX_LINE + 1);
+        private final Queue<String> lines = new ArrayDeque<>();
+        private final Queue<ByteBuffer> output = new ArrayDeque<>();
+        private int pendingOutput;
+        private long lastActive;
+        private boolean busy;
+        private boolean closing;
+        private boolean closed;
+
+        private Session(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Answer of an executed command, handed back to the selector thread.
+     */
+    private static final class Answer {
+
+        private final Session session;
+        private final String text;
+        private final boolean open;
+
+        private Answer(Session session, String text, boolean open) {
+            this.session = session;
+            this.text = text;
+            this.open = open;
+        }
+    }
+
+    private final Set<Session> sessions = new HashSet<>();
+    private final Queue<Answer> answers = new ConcurrentLinkedQueue<>();
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private SelectionKey acceptKey;
+    private long acceptPausedUntil;
+    private ExecutorService workers;
+    private volatile boolean running;
+
+    SelectorServer(InetSocketAddress address, long idleMillis) {
+        super(address, idleMillis);
+    }
+
+    @Override
+    public synchronized InetSocketAddress start() throws IOException {
+        if (selector != null) {
+            throw new IllegalStateException("Server is already started.");
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(getAddress(), 1024);
+        serverChannel.configureBlocking(false);
+        acceptKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        workers = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(), task -> {
+                    Thread thread = new Thread(task, "GameServer-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        running = true;
+        Thread thread = new Thread(this::selectLoop, "GameServer-selector");
+        thread.setDaemon(true);
+        thread.start();
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (running) {
+            running = false;
+            selector.wakeup();
+        }
+    }
+
+    private void selectLoop() {
+        final long sweepMillis = Math.min(MAX_SWEEP_MILLIS,
+                Math.max(1, getIdleMillis() / 2));
+        long nextSweep = System.currentTimeMillis() + sweepMillis;
+        try {
+            while (running) {
+                selector.select(acceptPausedUntil == 0 ? sweepMillis
+                        : Math.max(1, Math.min(sweepMillis, acceptPausedUntil
+                                - System.currentTimeMillis())));
+                Answer answer;
+                while ((answer = answers.poll()) != null) {
+                    deliver(answer);
+                }
+                Iterator<SelectionKey> keys =
+                        selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    } else if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Session session = (Session) key.attachment();
+                        if (key.isReadable()) {
+                            read(session);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(session);
+                        }
+                    }
+                }
+                final long now = System.currentTimeMillis();
+                if (acceptPausedUntil != 0 && now >= acceptPausedUntil) {
+                    acceptPausedUntil = 0;
+                    acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+                }
+                if (now >= nextSweep) {
+                    closeIdleSessions(now);
+                    nextSweep = now + sweepMillis;
+                }
+            }
+        } catch (IOException ex) {
+            // The selector failed, so no session can be served anymore
+        } finally {
+            for (Session session : new ArrayList<>(sessions)) {
+                closeSession(session, false);
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException ex) {
+                // Nothing left to do
+            }
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Accepts all pending connections. If accepting fails, for example
+     * because the process is out of file descriptors, accepting pauses for
+     * {@value #ACCEPT_BACKOFF_MILLIS} ms. A connection that fails after it
+     * was accepted is dropped.
+     */
+    private void accept() {
+        while (true) {
+            SocketChannel channel = null;
+            try {
+                channel = serverChannel.accept();
+                if (channel == null) {
+                    return;
+                }
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                SelectionKey key = channel.register(selector,
+                        SelectionKey.OP_READ);
+                Session session = new Session(channel, key);
+                key.attach(session);
+                session.lastActive = System.currentTimeMillis();
+                sessions.add(session);
+                sessionOpened();
+                send(session, Shell.PROMPT);
+            } catch (IOException ex) {
+                if (channel == null) {
+                    acceptKey.interestOps(0);
+                    acceptPausedUntil = System.currentTimeMillis()
+                            + ACCEPT_BACKOFF_MILLIS;
+                    return;
+                }
+                try {
+                    channel.close();
+                } catch (IOException closeEx) {
+                    // Nothing left to do
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads what the client sent and queues every complete line. Only a
+     * complete line makes the session active, so a client sending a byte now
+     * and then still times out.
+     */
+    private void read(Session session) {
+        final int n;
+        try {
+            n = session.channel.read(session.input);
+        } catch (IOException ex) {
+            closeSession(session, false);
+            return;
+        }
+        if (n < 0) {
+            closeSession(session, false);
+            return;
+        }
+        final ByteBuffer input = session.input;
+        input.flip();
+        int start = 0;
+        for (int i = 0; i < input.limit(); i++) {
+            if (input.get(i) == '\n') {
+                int end = i > start && input.get(i - 1) == '\r' ? i - 1 : i;
+                session.lines.add(new String(input.array(), start,
+                        end - start, StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        if (start > 0) {
+            session.lastActive = System.currentTimeMillis();
+        }
+        input.position(start);
+        input.compact();
+        if (!input.hasRemaining()) {
+            // More than MAX_LINE bytes without a line terminator
+            closeSession(session, false);
+            return;
+        }
+        dispatch(session);
+        updateInterest(session);
+    }
+
+    /**
+     * Hands the next command of an idle session to the workers.
+     */
+    private void dispatch(Session session) {
+        if (session.busy || session.closing || session.lines.isEmpty()) {
+            return;
+        }
+        session.busy = true;
+        final String line = session.lines.poll();
+        workers.execute(() -> {
+            boolean open = false;
+            try {
+                open = execute(session.shell, session.out, line);
+            } catch (Error ex) {
+                // Out of memory, for example: the game may be broken, so the
+                // session is closed after this answer
+                session.out.println("Error! " + ex + " Session closed.");
+                throw ex;
+            } finally {
+                // Always answered, or the session stays busy for good
+                session.out.flush();
+                String text = session.text.toString();
+                session.text.getBuffer().setLength(0);
+                answers.add(new Answer(session, text, open));
+                selector.wakeup();
+            }
+        });
+    }
+
+    private void deliver(Answer answer) {
+        final Session session = answer.session;
+        session.busy = false;
+        if (session.closed) {
+            session.shell.close();
+            return;
+        }
+        session.lastActive = System.currentTimeMillis();
+        if (!answer.open) {
+            session.closing = true;
+            session.lines.clear();
+        }
+        send(session, answer.text);
+        dispatch(session);
+    }
+
+    private void send(Session session, String text) {
+        if (!text.isEmpty()) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            session.output.add(ByteBuffer.wrap(bytes));
+            session.pendingOutput += bytes.length;
+        }
+        flush(session);
+    }
+
+    /**
+     * Writes as much of the answers as the socket takes without blocking.
+     */
+    private void flush(Session session) {
+        try {
+            ByteBuffer head;
+            while ((head = session.output.peek()) != null) {
+                session.pendingOutput -= session.channel.write(head);
+                if (head.hasRemaining()) {
+                    break;
+                }
+                session.output.poll();
+            }
+        } catch (IOException ex) {
+            closeSession(session, false);
+            return;
+        }
+        if (session.closing && session.output.isEmpty() && !session.busy) {
+            closeSession(session, false);
+        } else {
+            updateInterest(session);
+        }
+    }
+
+    /**
+     * Reads only while the session has room for more commands and answers,
+     * and waits for the socket to take more only while answers are left.
+     */
+    private void updateInterest(Session session) {
+        if (session.closed) {
+            return;
+        }
+        int ops = 0;
+        if (!session.closing && session.lines.size() < MAX_QUEUED_LINES
+                && session.pendingOutput < MAX_PENDING_OUTPUT) {
+            ops |= SelectionKey.OP_READ;
+        }
+        if (!session.output.isEmpty()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        session.key.interestOps(ops);
+    }
+
+    private void closeIdleSessions(long now) {
+        for (Session session : new ArrayList<>(sessions)) {
+            if (!session.busy
+                    && now - session.lastActive > getIdleMillis()) {
+                try {
+                    // Best effort, a client that reads nothing will not care
+                    session.channel.write(ByteBuffer.wrap(("\n"
+                            + TIMEOUT_MESSAGE + "\n")
+                                    .getBytes(StandardCharsets.UTF_8)));
+                } catch (IOException ex) {
+                    // Closed below anyway
+                }
+                closeSession(session, true);
+            }
+        }
+    }
+
+    /**
+     * Closes the connection. The game of a busy session is released when its
+     * command is done.
+     */
+    private void closeSession(Session session, boolean timedOut) {
+        if (session.closed) {
+            return;
+        }
+        session.closed = true;
+        session.key.cancel();
+        try {
+            session.channel.close();
+        } catch (IOException ex) {
+            // Nothing left to do
+        }
+        sessions.remove(session);
+        if (!session.busy) {
+            session.shell.close();
+        }
+        sessionClosed(timedOut);
+    }
+}
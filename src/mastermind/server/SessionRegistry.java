@@ -0,0 +1,370 @@
+package mastermind.server;
+
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import mastermind.model.Game;
+import mastermind.model.MastermindGame;
+
+/**
+ * Owns the games of many sessions and lets many threads work on them. Games
+ * are not thread-safe, so the operations on one game are executed one after
+ * another, while operations on different games run in parallel.
+ * <p>
+ * There is no global lock. The sessions are found in a concurrent map and
+ * every session is guarded by one of a fixed number of stripes, chosen by its
+ * id. Ids are handed out in sequence, so the sessions spread evenly over the
+ * stripes and two threads only wait for each other if their games share a
+ * stripe. A session needs no lock object of its own. An operation holds the
+ * stripe while it runs, so a long machine move of a large game delays the
+ * other sessions of its stripe.
+ * <p>
+ * Every session has a version that is incremented by every operation that
+ * may change its game, whether it succeeds or not. A client that passes the
+ * version it has seen is rejected with a {@link StaleVersionException} if
+ * another request came first, such as the retry of a front-end or a second
+ * tab. The version is compared before the stripe is locked, so most stale
+ * requests never wait, and again under the lock.
+ */
+public final class SessionRegistry {
+
+    /**
+     * Expected version that matches every version.
+     */
+    public static final int ANY_VERSION = -1;
+
+    /**
+     * Number of stripes per core if no other number is given.
+     */
+    private static final int STRIPES_PER_CORE = 16;
+
+    /**
+     * Work on the game of a session while its stripe is locked.
+     *
+     * @param <T>
+     *            result of the operation
+     */
+    @FunctionalInterface
+    public interface Operation<T> {
+
+        /**
+         * Works on the game. An operation that changes the game should
+         * check the request before, as the methods of {@link MastermindGame}
+         * do. Since a failed operation may still have changed the game, the
+         * version is incremented anyway.
+         *
+         * @param id
+         *            id of the session
+         * @param game
+         *            game of the session
+         * @param version
+         *            version of the session after the operation
+         * @return result
+         */
+        T apply(long id, MastermindGame game, int version);
+    }
+
+    /**
+     * Thrown if a request expects another version than the session has. It
+     * carries no stack trace, since it is part of the normal flow of a
+     * server with retrying clients.
+     */
+    public static final class StaleVersionException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int version;
+
+        private StaleVersionException(long id, int expected, int version) {
+            super("Game " + id + " is at version " + version + ", not "
+                    + expected + ".", null, false, false);
+            this.version = version;
+        }
+
+        /**
+         * Returns the version the session had when the request was rejected.
+         *
+         * @return current version
+         */
+        public int getVersion() {
+            return version;
+        }
+    }
+
+    /**
+     * A game and its version. The game is only touched while the stripe of
+     * the session is locked.
+     */
+    private static final class Session {
+
+        private final MastermindGame game;
+        private volatile int version;
+        private volatile long lastAccess = System.currentTimeMillis();
+        private boolean removed;
+
+        private Session(MastermindGame game) {
+            this.game = game;
+        }
+    }
+
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final Object[] stripes;
+    private final AtomicLong nextId = new AtomicLong();
+    private final LongAdder operations = new LongAdder();
+    private final LongAdder staleRequests = new LongAdder();
+
+    /**
+     * Constructs an empty registry with {@value #STRIPES_PER_CORE} stripes
+     * per core.
+     */
+    public SessionRegistry() {
+        this(STRIPES_PER_CORE * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs an empty registry.
+     *
+     * @param stripes
+     *            number of stripes, at least 1, rounded up to a power of two
+     */
+    public SessionRegistry(int stripes) {
+        if (stripes < 1 || stripes > 1 << 30) {
+            throw new IllegalArgumentException(
+                    "Number of stripes must be from 1 to 2^30. Is " + stripes);
+        }
+        int count = 1;
+        while (count < stripes) {
+            count <<= 1;
+        }
+        this.stripes = new Object[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * Adds a session. The game must not be used by the caller anymore.
+     *
+     * @param game
+     *            game of the session
+     * @return id of the session, starting with 1; its version is 0
+     */
+    public long add(MastermindGame game) {
+        if (game == null) {
+            throw new IllegalArgumentException("Game must not be null.");
+        }
+        final long id = nextId.incrementAndGet();
+        sessions.put(id, new Session(game));
+        return id;
+    }
+
+    /**
+     * Executes an operation that may change the game of a session and
+     * increments the version of the session, even if the operation throws:
+     * it may have changed the game before, so a request sent with the old
+     * version must not be applied on top.
+     *
+     * @param <T>
+     *            result of the operation
+     * @param id
+     *            id of the session
+     * @param expectedVersion
+     *            version the client has seen, or {@value #ANY_VERSION}
+     * @param operation
+     *            work on the game
+     * @return result of the operation
+     * @throws NoSuchElementException
+     *             if there is no such session
+     * @throws StaleVersionException
+     *             if the session has another version than expected
+     */
+    public <T> T execute(long id, int expectedVersion,
+            Operation<T> operation) {
+        final Session session = find(id, expectedVersion);
+        synchronized (stripe(id)) {
+            check(id, session, expectedVersion);
+            final int version = session.version + 1;
+            try {
+                return operation.apply(id, session.game, version);
+            } finally {
+                session.version = version;
+            }
+        }
+    }
+
+    /**
+     * Executes an operation that does not change the game of a session, so
+     * the version stays the same.
+     *
+     * @param <T>
+     *            result of the operation
+     * @param id
+     *            id of the session
+     * @param expectedVersion
+     *            version the client has seen, or {@value #ANY_VERSION}
+     * @param operation
+     *            work on the game, which is passed the current version
+     * @return result of the operation
+     * @throws NoSuchElementException
+     *             if there is no such session
+     * @throws StaleVersionException
+     *             if the session has another version than expected
+     */
+    public <T> T read(long id, int expectedVersion, Operation<T> operation) {
+        final Session session = find(id, expectedVersion);
+        synchronized (stripe(id)) {
+            check(id, session, expectedVersion);
+            return operation.apply(id, session.game, session.version);
+        }
+    }
+
+    /**
+     * Returns the version of a session without locking it.
+     *
+     * @param id
+     *            id of the session
+     * @return number of operations that were executed on the game
+     * @throws NoSuchElementException
+     *             if there is no such session
+     */
+    public int getVersion(long id) {
+        return find(id, ANY_VERSION).version;
+    }
+
+    /**
+     * Removes a session and releases its game.
+     *
+     * @param id
+     *            id of the session
+     * @param expectedVersion
+     *            version the client has seen, or {@value #ANY_VERSION}
+     * @throws NoSuchElementException
+     *             if there is no such session
+     * @throws StaleVersionException
+     *             if the session has another version than expected
+     */
+    public void remove(long id, int expectedVersion) {
+        final Session session = find(id, expectedVersion);
+        synchronized (stripe(id)) {
+            check(id, session, expectedVersion);
+            remove(id, session);
+        }
+    }
+
+    /**
+     * Removes the sessions that had no operation for the specified time.
+     *
+     * @param idleMillis
+     *            time since the last operation
+     * @return number of removed sessions
+     */
+    public int removeIdle(long idleMillis) {
+        final long now = System.currentTimeMillis();
+        int count = 0;
+        for (Map.Entry<Long, Session> entry : sessions.entrySet()) {
+            final long id = entry.getKey();
+            final Session session = entry.getValue();
+            if (now - session.lastAccess > idleMillis) {
+                synchronized (stripe(id)) {
+                    if (!session.removed
+                            && now - session.lastAccess > idleMillis) {
+                        remove(id, session);
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Removes all sessions.
+     */
+    public void clear() {
+        removeIdle(-1);
+    }
+
+    /**
+     * Returns the number of sessions.
+     *
+     * @return sessions that are not removed yet
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Returns the number of operations executed so far, reads included.
+     *
+     * @return executed operations
+     */
+    public long getOperationCount() {
+        return operations.sum();
+    }
+
+    /**
+     * Returns the number of requests rejected for a stale version so far.
+     *
+     * @return stale requests
+     */
+    public long getStaleCount() {
+        return staleRequests.sum();
+    }
+
+    private Object stripe(long id) {
+        return stripes[(int) id & (stripes.length - 1)];
+    }
+
+    /**
+     * Looks a session up and compares its version without locking it.
+     */
+    private Session find(long id, int expectedVersion) {
+        final Session session = sessions.get(id);
+        if (session == null) {
+            throw new NoSuchElementException("Unknown game " + id);
+        } else if (expectedVersion != ANY_VERSION
+                && expectedVersion != session.version) {
+            staleRequests.increment();
+            throw new StaleVersionException(id, expectedVersion,
+                    session.version);
+        }
+        return session;
+    }
+
+    /**
+     * Compares the version again once the stripe is locked. Only while
+     * holding the lock of the stripe.
+     */
+    private void check(long id, Session session, int expectedVersion) {
+        if (session.removed) {
+            throw new NoSuchElementException("Unknown game " + id);
+        } else if (expectedVersion != ANY_VERSION
+                && expectedVersion != session.version) {
+            staleRequests.increment();
+            throw new StaleVersionException(id, expectedVersion,
+                    session.version);
+        }
+        session.lastAccess = System.currentTimeMillis();
+        operations.increment();
+    }
+
+    /**
+     * Only while holding the lock of the stripe.
+     */
+    private void remove(long id, Session session) {
+        sessions.remove(id, session);
+        session.removed = true;
+        if (session.game instanceof Game) {
+            ((Game) session.game).dispose();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d sessions, %d operations, %d stale",
+                getSessionCount(), getOperationCount(), getStaleCount());
+    }
+}
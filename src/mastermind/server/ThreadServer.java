@@ -0,0 +1,218 @@
+package mastermind.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import mastermind.shell.Shell;
+
+/**
+ * Serves every connection with a thread that blocks on its socket. Every
+ * command line has to arrive within the idle timeout after the previous
+ * answer; the read timeout of the socket is set to the time that is left.
+ * Back-pressure comes for free: a thread that cannot write its answer does
+ * not read the next command.
+ * <p>
+ * On a JDK with virtual threads every connection gets one, otherwise the
+ * connections share a cached pool of platform threads, which limits the
+ * number of sessions to the number of threads the system allows.
+ */
+final class ThreadServer extends GameServer {
+
+    /**
+     * Shortest and longest pause after a failed accept, for example when the
+     * process is out of file descriptors.
+     */
+    private static final long MIN_ACCEPT_BACKOFF_MILLIS = 10;
+    private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private ServerSocket serverSocket;
+    private ExecutorService executor;
+
+    ThreadServer(InetSocketAddress address, long idleMillis) {
+        super(address, idleMillis);
+    }
+
+    @Override
+    public synchronized InetSocketAddress start() throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("Server is already started.");
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.bind(getAddress(), 1024);
+        executor = newThreadPerTaskExecutor("GameServer-session");
+        Thread acceptor = new Thread(this::acceptLoop, "GameServer-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (serverSocket == null) {
+            return;
+        }
+        try {
+            serverSocket.close();
+        } catch (IOException ex) {
+            // The sockets of the sessions are closed anyway
+        }
+        for (Socket socket : sockets) {
+            closeQuietly(socket);
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread per task, which is
+     * looked up reflectively as this code is compiled for JDKs without them.
+     * Otherwise the tasks share a cached pool of daemon threads.
+     *
+     * @param threadName
+     *            name of the platform threads
+     * @return executor for many short or blocking tasks
+     */
+    static ExecutorService newThreadPerTaskExecutor(String threadName) {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void acceptLoop() {
+        long backoff = MIN_ACCEPT_BACKOFF_MILLIS;
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+                backoff = MIN_ACCEPT_BACKOFF_MILLIS;
+            } catch (IOException ex) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                // Out of file descriptors fails again at once, so wait for
+                // sessions to close instead of spinning
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                backoff = Math.min(MAX_ACCEPT_BACKOFF_MILLIS, 2 * backoff);
+                continue;
+            }
+            sockets.add(socket);
+            sessionOpened();
+            executor.execute(() -> serve(socket));
+        }
+    }
+
+    private void serve(Socket socket) {
+        boolean timedOut = false;
+        Shell shell = null;
+        try {
+            socket.setTcpNoDelay(true);
+            Reader in = new BufferedReader(new InputStreamReader(
+                    socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                    socket.getOutputStream(), StandardCharsets.UTF_8));
+            shell = new Shell(out, MAX_CODE_COUNT);
+            out.print(Shell.PROMPT);
+            out.flush();
+            StringBuilder line = new StringBuilder();
+            boolean open = true;
+            while (open) {
+                try {
+                    if (!readLine(socket, in, line,
+                            System.currentTimeMillis() + getIdleMillis())) {
+                        break;
+                    }
+                } catch (SocketTimeoutException ex) {
+                    out.println();
+                    out.println(TIMEOUT_MESSAGE);
+                    out.flush();
+                    timedOut = true;
+                    break;
+                }
+                open = execute(shell, out, line.toString());
+                out.flush();
+            }
+        } catch (IOException ex) {
+            // The client is gone
+        } finally {
+            if (shell != null) {
+                shell.close();
+            }
+            sockets.remove(socket);
+            closeQuietly(socket);
+            sessionClosed(timedOut);
+        }
+    }
+
+    /**
+     * Reads a line of at most {@value GameServer#MAX_LINE} characters, so a
+     * client cannot make the server buffer without limit. A line terminated
+     * by CR LF loses both. The whole line has to arrive before the deadline,
+     * so a client sending a byte now and then cannot keep the session.
+     *
+     * @return false at the end of the stream
+     * @throws SocketTimeoutException
+     *             if the deadline passes
+     * @throws IOException
+     *             if the line is too long or cannot be read
+     */
+    private static boolean readLine(Socket socket, Reader in,
+            StringBuilder line, long deadline) throws IOException {
+        line.setLength(0);
+        while (true) {
+            if (!in.ready()) {
+                // Only a read that may block needs the time that is left
+                final long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    throw new SocketTimeoutException("Line took too long.");
+                }
+                socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, left));
+            }
+            final int c = in.read();
+            if (c == '\n') {
+                break;
+            } else if (c < 0) {
+                return false;
+            } else if (line.length() == MAX_LINE) {
+                throw new IOException("Line is too long.");
+            }
+            line.append((char) c);
+        }
+        if (line.length() > 0 && line.charAt(line.length() - 1) == '\r') {
+            line.setLength(line.length() - 1);
+        }
+        return true;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            // Nothing left to do
+        }
+    }
+}
@@ -3,36 +3,75 @@ package mastermind.shell;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintWriter;
 
 import mastermind.model.ColorCode;
 import mastermind.model.Game;
+import mastermind.model.GameSpec;
 import mastermind.model.MastermindGame;
 import mastermind.model.Rating;
+import mastermind.model.StrategyType;
 
 /**
  * Provides an interface for the user to use the Trie.
+ * <p>
+ * A shell is one session of the line protocol: it owns a game and the
+ * settings of the next one and writes every answer to its output. The
+ * {@code GameServer} runs one shell per connection.
  */
 public final class Shell {
 
     /**
-     * Boolean that indicates that a game is over. Wrapped in an Object the the
-     * boolean is passed by reference. (In lecture we were told to not declare a
-     * game as a global Variable therefore the boolean can't be one either.
+     * Printed before every command the shell reads.
      */
-    private static class Boolean {
-        private boolean value = false;
-    }
+    public static final String PROMPT = "mastermind> ";
 
     private enum ErrCode {
         INVALID_COMMAND, NOT_A_NUMBER, NOT_ENOUGH_NUMBERS, WRONG_MODE,
-        GAME_OVER, INVALID_RATING
+        GAME_OVER, INVALID_RATING, UNKNOWN_STRATEGY, INVALID_COLOR,
+        INVALID_SPEC
     }
 
     private enum MessCode {
-        HUMAN_WON, HUMAN_LOST, RATING, MOVE, CHEAT, MACHINE_LOST, MACHINE_WON
+        HUMAN_WON, HUMAN_LOST, RATING, MOVE, CHEAT, MACHINE_LOST, MACHINE_WON,
+        STRATEGIES
+    }
+
+    private final PrintWriter out;
+    private final int maxCodeCount;
+    private Game game;
+    private boolean isGameOver;
+
+    /**
+     * Strategy of the machine guesser and dimensions of the next game.
+     */
+    private StrategyType strategy = StrategyType.FIRST_CONSISTENT;
+    private GameSpec nextSpec = GameSpec.DEFAULT;
+
+    /**
+     * Constructs a shell where the human is guesser and games may have as
+     * many color codes as {@link GameSpec} allows.
+     *
+     * @param out
+     *            receives the answers to the commands; it is not flushed
+     */
+    public Shell(PrintWriter out) {
+        this(out, GameSpec.MAX_CODE_COUNT);
     }
 
-    private Shell() {
+    /**
+     * Constructs a shell where the human is guesser.
+     *
+     * @param out
+     *            receives the answers to the commands; it is not flushed
+     * @param maxCodeCount
+     *            largest code space of a game, so a client cannot take a
+     *            large part of the memory of a server
+     */
+    public Shell(PrintWriter out, int maxCodeCount) {
+        this.out = out;
+        this.maxCodeCount = maxCodeCount;
+        this.game = new Game(false); // Human is guesser by default
     }
 
     /**
@@ -44,27 +83,37 @@ public final class Shell {
     public static void main(final String[] args) {
         InputStreamReader isr = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(isr);
-        MastermindGame game = new Game(false); // Human is guesser by default
-        Boolean isGameOver = new Boolean();
+        PrintWriter out = new PrintWriter(System.out);
+        Shell shell = new Shell(out);
+        boolean running = true;
 
-        while (game != null) {
+        while (running) {
             String line;
-            System.out.print("mastermind> ");
+            out.print(PROMPT);
+            out.flush();
             try {
                 line = reader.readLine();
             } catch (IOException ex) {
                 continue; // print prompt again
             }
-            game = execute(game, line, isGameOver); // null if user quits app
+            // false if user quits app
+            running = line != null && shell.execute(line);
+            out.flush();
         }
+        shell.close();
     }
 
-    private static MastermindGame execute(
-            MastermindGame game, String line, Boolean isGameOver) {
-
+    /**
+     * Executes one command and writes its answer.
+     *
+     * @param line
+     *            command with its arguments
+     * @return false if the command was quit, so the session is over
+     */
+    public boolean execute(String line) {
         line = line.trim();
         if (line.isEmpty()) {
-            return game; // Output prompt again
+            return true; // Output prompt again
         }
         String[] tokens = line.split("\\s+");
         String command = tokens[0].toLowerCase();
@@ -73,85 +122,143 @@ public final class Shell {
 
         switch (firstLetterOfCommand) {
         case 'h': // help
-            printHelp();
+            printHelp(game.getSpec());
             break;
         case 'q': // quit
-            return null;
+            return false;
         case 's': // switch
-            game = newGame(!game.isMachineGuessing(), isGameOver);
+            newGame(!game.isMachineGuessing());
             break;
         case 'n': // new
-            game = newGame(game.isMachineGuessing(), isGameOver);
+            if (tokens.length > 1) {
+                GameSpec spec = parseSpec(getArgs(tokens));
+                if (spec == null) {
+                    return true;
+                }
+                nextSpec = spec;
+            }
+            newGame(game.isMachineGuessing());
+            break;
+        case 'g': // guesser
+            if (tokens.length < 2) {
+                message(MessCode.STRATEGIES, strategy.toString());
+                break;
+            }
+            StrategyType type = StrategyType.byName(tokens[1]);
+            if (type == null) {
+                errorMessage(ErrCode.UNKNOWN_STRATEGY, tokens[1]);
+                return true;
+            }
+            strategy = type;
+            newGame(game.isMachineGuessing());
             break;
         case 'm': // move
-            if (isGameOver.value) {
+            if (isGameOver) {
                 errorMessage(ErrCode.GAME_OVER, null);
-                return game;
+                return true;
             }
-            success = humanMove(getArgs(tokens), game);
+            success = humanMove(getArgs(tokens));
             if (success) {
-                Rating lastRating = game.getRating(game.getMoveCount());
-                if (lastRating.getBlack() == MastermindGame.NUMBER_SLOTS) {
+                Rating lastRating = game.getRating(game.getMoveCount() - 1);
+                if (lastRating.isAllBlack()) {
                     String moveCount;
                     moveCount = (String.valueOf(game.getMoveCount()));
                     message(MessCode.HUMAN_WON, moveCount);
-                    isGameOver.value = true;
+                    isGameOver = true;
                 } else if (boardFull(game)) {
                     String secret = game.getSecret().toString();
                     message(MessCode.HUMAN_LOST, secret);
-                    isGameOver.value = true;
+                    isGameOver = true;
                 } else {
                     message(MessCode.RATING, lastRating.toString());
                 }
             }
             break;
         case 'e': // eval
-            if (isGameOver.value) {
+            if (isGameOver) {
                 errorMessage(ErrCode.GAME_OVER, null);
-                return game;
+                return true;
             }
-            Rating rating = processEval(getArgs(tokens), game);
+            Rating rating = processEval(getArgs(tokens));
             // if processEval printed error
             if (rating == null) {
-                return game;
-            } else if (rating.getBlack() == MastermindGame.NUMBER_SLOTS) {
+                return true;
+            } else if (rating.isAllBlack()) {
                 message(MessCode.MACHINE_WON, null);
-                isGameOver.value = true;
+                isGameOver = true;
             } else if (boardFull(game)) {
                 message(MessCode.MACHINE_LOST, null);
-                isGameOver.value = true;
+                isGameOver = true;
             } else {
                 ColorCode move = game.machineMove();
                 if (move == null) {
                     message(MessCode.CHEAT, null);
-                    isGameOver.value = true;
+                    isGameOver = true;
                 } else {
-                    message(MessCode.MOVE, String.valueOf(move));
+                    message(MessCode.MOVE, describeMachineMove(move));
                 }
             }
             break;
         default:
             errorMessage(ErrCode.INVALID_COMMAND, command);
         }
-        return game;
+        return true;
     }
 
-    private static MastermindGame newGame(boolean machineIsGuessing,
-            Boolean isGameOver) {
-        isGameOver.value = false;
-        MastermindGame game = new Game(machineIsGuessing);
+    /**
+     * Releases the game. Afterwards the shell must not be used anymore.
+     */
+    public void close() {
+        game.dispose();
+    }
+
+    private void newGame(boolean machineIsGuessing) {
+        game.dispose();
+        isGameOver = false;
+        game = new Game(nextSpec, machineIsGuessing, strategy.create());
         if (machineIsGuessing) {
             ColorCode move = game.machineMove();
-            message(MessCode.MOVE, move.toString());
+            message(MessCode.MOVE, describeMachineMove(move));
         }
-        return game;
+    }
+
+    private String describeMachineMove(ColorCode move) {
+        return String.format("%s   (%s: %.3f ms, %d candidates)", move,
+                game.getStrategy().getName(),
+                game.getLastComputeNanos() / 1e6,
+                game.getCandidateCount());
     }
 
     private static boolean boardFull(MastermindGame game) {
-        return game.getMoveCount() == MastermindGame.MAX_MOVES;
+        return game.getMoveCount() == game.getSpec().getMaxMoves();
+    }
+
+    private GameSpec parseSpec(String[] args) {
+        byte[] dimensions = stringToByte(args);
+        if (dimensions == null) {
+            return null;
+        } else if (dimensions.length < 2) {
+            errorMessage(ErrCode.NOT_ENOUGH_NUMBERS, "2 or 3");
+            return null;
+        }
+        int maxMoves = dimensions.length > 2 ? dimensions[2]
+                : MastermindGame.MAX_MOVES;
+        final GameSpec spec;
+        try {
+            spec = new GameSpec(dimensions[0], dimensions[1], maxMoves);
+        } catch (IllegalArgumentException ex) {
+            errorMessage(ErrCode.INVALID_SPEC, ex.getMessage());
+            return null;
+        }
+        if (spec.getCodeCount() > maxCodeCount) {
+            errorMessage(ErrCode.INVALID_SPEC, "At most " + maxCodeCount
+                    + " color codes are served. Are " + spec.getCodeCount());
+            return null;
+        }
+        return spec;
     }
 
-    private static Rating processEval(String[] args, MastermindGame game) {
+    private Rating processEval(String[] args) {
         if (!game.isMachineGuessing()) {
             errorMessage(ErrCode.WRONG_MODE, null);
             return null;
@@ -164,12 +271,15 @@ public final class Shell {
         if (blackwhite == null) {
             return null;
         }
-        Rating rating = new Rating(blackwhite[0], blackwhite[1]);
-        int numberOfRatingPegs = rating.getBlack() + rating.getWhite();
-        if (numberOfRatingPegs > MastermindGame.NUMBER_SLOTS) {
-            errorMessage(ErrCode.INVALID_RATING, rating.toString());
+        int numberOfRatingPegs = blackwhite[0] + blackwhite[1];
+        if (blackwhite[0] < 0 || blackwhite[1] < 0
+                || numberOfRatingPegs > game.getSpec().getSlots()) {
+            errorMessage(ErrCode.INVALID_RATING, "black: " + blackwhite[0]
+                    + " white: " + blackwhite[1]);
             return null;
         }
+        Rating rating =
+                Rating.valueOf(game.getSpec(), blackwhite[0], blackwhite[1]);
         int lastMoveNo = game.getMoveCount() - 1;
         ColorCode lastMove = game.getGameState(lastMoveNo);
         game.processEval(lastMove, rating);
@@ -184,7 +294,7 @@ public final class Shell {
      * @return array of bytes or null if at least one string could not be
      *         converted
      */
-    private static byte[] stringToByte(String[] strings) {
+    private byte[] stringToByte(String[] strings) {
         byte[] bytes = new byte[strings.length];
         for (int i = 0; i < strings.length; i++) {
             try {
@@ -205,24 +315,33 @@ public final class Shell {
         return arguments;
     }
 
-    private static boolean humanMove(String[] args, MastermindGame game) {
+    private boolean humanMove(String[] args) {
         if (game.isMachineGuessing()) {
             errorMessage(ErrCode.WRONG_MODE, "");
             return false;
         }
+        GameSpec spec = game.getSpec();
         byte[] pegs = stringToByte(args);
         if (pegs == null) {
             return false;
-        } else if (MastermindGame.NUMBER_SLOTS > args.length) {
-            errorMessage(ErrCode.NOT_ENOUGH_NUMBERS, "4");
+        } else if (spec.getSlots() > args.length) {
+            errorMessage(ErrCode.NOT_ENOUGH_NUMBERS,
+                    String.valueOf(spec.getSlots()));
             return false;
-        } else {
-            game.humanMove(new ColorCode(pegs));
-            return true;
         }
+        for (int i = 0; i < pegs.length; i++) {
+            if (pegs[i] < 0 || pegs[i] >= spec.getColors()) {
+                errorMessage(ErrCode.INVALID_COLOR, args[i]
+                        + " is not a number from 0 to "
+                        + (spec.getColors() - 1));
+                return false;
+            }
+        }
+        game.humanMove(ColorCode.of(spec, pegs));
+        return true;
     }
 
-    private static void message(MessCode mess, String adj) {
+    private void message(MessCode mess, String adj) {
         String output;
         switch (mess) {
         case HUMAN_WON:
@@ -246,21 +365,32 @@ public final class Shell {
         case CHEAT:
             output = "No possibilities left - you have been cheating!";
             break;
+        case STRATEGIES:
+            output = "Current guesser: " + adj + "\nAvailable:";
+            for (StrategyType type : StrategyType.values()) {
+                output += " " + type.create().getName();
+            }
+            break;
         default:
             throw new IllegalArgumentException("Unknown Output!");
         }
-        System.out.println(output);
+        out.println(output);
     }
 
-    private static void errorMessage(ErrCode err, String adj) {
+    private void errorMessage(ErrCode err, String adj) {
         String output = "Error! ";
         switch (err) {
         case INVALID_COMMAND:
             output += "Invalid command " + adj;
             break;
         case NOT_A_NUMBER:
-            output += adj + " is not a number from 0 to "
-                    + (MastermindGame.NUMBER_COLORS - 1) + ".";
+            output += adj + " is not a number.";
+            break;
+        case INVALID_COLOR:
+            output += adj + ".";
+            break;
+        case INVALID_SPEC:
+            output += adj;
             break;
         case NOT_ENOUGH_NUMBERS:
             output += "This commad needs " + adj
@@ -276,13 +406,17 @@ public final class Shell {
         case INVALID_RATING:
             output += "This is not a valid Rating. " + adj;
             break;
+        case UNKNOWN_STRATEGY:
+            output += "Unknown guesser " + adj + ". Type \"guesser\" to "
+                    + "list all.";
+            break;
         default:
             throw new IllegalArgumentException("Unknown Error!");
         }
-        System.out.println(output);
+        out.println(output);
     }
 
-    private static void printHelp() {
+    private void printHelp(GameSpec spec) {
         String help = "\n"
                 + "Everybody knows the rules of Mastermind. If you don't,\n"
                 + "please search search the web. Just to remind you: One\n"
@@ -299,27 +433,36 @@ public final class Shell {
                 + "guesser\n"
                 + "\n"
 
-                + "new\n"
+                + "new [colors slots [moves]]\n"
                 + "Creates a new game whitout chaning the Roles.\n"
+                + "With numbers it also changes the number of colors, slots\n"
+                + "and moves, for example \"new 8 5 10\" for Super\n"
+                + "Mastermind.\n"
                 + "\n"
 
                 + "move\n"
                 + "(only if the player is guessing)\n"
-                + "Sets the " + MastermindGame.NUMBER_SLOTS + " coloured pegs "
+                + "Sets the " + spec.getSlots() + " coloured pegs "
                 + "as a guess.\n"
                 + "The command musst be followed by "
-                + MastermindGame.NUMBER_SLOTS + " numbers from 0 to "
-                + (MastermindGame.NUMBER_COLORS - 1) + ".\n"
+                + spec.getSlots() + " numbers from 0 to "
+                + (spec.getColors() - 1) + ".\n"
                 + "\n"
 
                 + "eval\n"
                 + "(only if the computer is guessing)\n"
                 + "Defines a Rating for the move the Computer has taken.\n"
                 + "The command must be followed by 2 numbers from 0 to "
-                + MastermindGame.NUMBER_SLOTS + ",\n"
+                + spec.getSlots() + ",\n"
                 + "where the first one indicates the number of black and the\n"
-                + "second one number of white pegs.\n";
-        System.out.println(help);
+                + "second one number of white pegs.\n"
+                + "\n"
+
+                + "guesser [name]\n"
+                + "Without name lists the strategies the computer can guess\n"
+                + "with. With name selects one of them and starts a new game.\n"
+                + "Every guess of the computer shows the time it took.\n";
+        out.println(help);
     }
 
 }
\ No newline at end of file
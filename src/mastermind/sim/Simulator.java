@@ -0,0 +1,343 @@
+package mastermind.sim;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mastermind.model.ColorCode;
+import mastermind.model.Game;
+import mastermind.model.GameSpec;
+import mastermind.model.GuessCache;
+import mastermind.model.GuessStrategy;
+import mastermind.model.MastermindGame;
+import mastermind.model.OpeningBook;
+import mastermind.model.Rating;
+import mastermind.model.RatingMatrix;
+import mastermind.model.StrategyType;
+
+/**
+ * Lets the machine guesser play against itself and reports how many moves and
+ * how much time it needs. Small code spaces are played against every secret,
+ * larger ones against a number of random secrets. Optionally all games share
+ * a cache of computed guesses or follow an opening book. For mid-size code
+ * spaces the statistics of the {@code RatingMatrix} are printed too.
+ */
+public final class Simulator {
+
+    /**
+     * Code spaces up to this size are played exhaustively by default.
+     */
+    private static final int EXHAUSTIVE_LIMIT = 10000;
+
+    private static final int DEFAULT_GAMES = 1000;
+
+    /**
+     * Statistics of the games played by one thread.
+     */
+    private static final class Result {
+
+        private final long[] histogram;
+        private long[] latencies = new long[1024];
+        private int moves;
+        private int failures;
+
+        private Result(int maxMoves) {
+            histogram = new long[maxMoves + 1];
+        }
+
+        private void addLatency(long nanos) {
+            if (moves == latencies.length) {
+                latencies = Arrays.copyOf(latencies, moves * 2);
+            }
+            latencies[moves++] = nanos;
+        }
+
+        private void merge(Result other) {
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += other.histogram[i];
+            }
+            for (int i = 0; i < other.moves; i++) {
+                addLatency(other.latencies[i]);
+            }
+            failures += other.failures;
+        }
+    }
+
+    private final GameSpec spec;
+    private final StrategyType strategy;
+    private final int[] secrets;
+    private final int threads;
+    private final GuessCache cache;
+    private OpeningBook book;
+
+    /**
+     * Constructs a simulator.
+     *
+     * @param spec
+     *            dimensions of the games
+     * @param strategy
+     *            strategy of the machine guesser
+     * @param secrets
+     *            indices of the secrets to play against
+     * @param threads
+     *            number of games played in parallel
+     * @param cache
+     *            cache of guesses shared by all games, or null for none
+     */
+    public Simulator(GameSpec spec, StrategyType strategy, int[] secrets,
+            int threads, GuessCache cache) {
+        this.spec = spec;
+        this.strategy = strategy;
+        this.secrets = secrets.clone();
+        this.threads = threads;
+        this.cache = cache;
+    }
+
+    /**
+     * Lets all games take their moves from an opening book while they are in
+     * the book.
+     *
+     * @param openingBook
+     *            book for the code space, or null for none
+     */
+    public void setOpeningBook(OpeningBook openingBook) {
+        this.book = openingBook;
+    }
+
+    /**
+     * Runs a simulation and prints the statistics.
+     *
+     * @param args
+     *            options {@code -colors}, {@code -slots}, {@code -moves},
+     *            {@code -strategy}, {@code -games}, {@code -seed},
+     *            {@code -threads}, {@code -cache} (number of entries, 0 for
+     *            no cache), {@code -book} (file of an opening book),
+     *            {@code -matrix} (memory budget of the rating matrix in MB)
+     *            and {@code -spill} (directory to spill the rating matrix
+     *            to), each followed by its value
+     * @throws IOException
+     *             if the opening book cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        int colors = MastermindGame.NUMBER_COLORS;
+        int slots = MastermindGame.NUMBER_SLOTS;
+        int maxMoves = MastermindGame.MAX_MOVES;
+        String strategyName = "first";
+        int games = 0;
+        long seed = System.nanoTime();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int cacheSize = 0;
+        String bookFile = null;
+        long matrixBudget = RatingMatrix.DEFAULT_BUDGET;
+        String spillDirectory = null;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "-colors":
+                colors = Integer.parseInt(value);
+                break;
+            case "-slots":
+                slots = Integer.parseInt(value);
+                break;
+            case "-moves":
+                maxMoves = Integer.parseInt(value);
+                break;
+            case "-strategy":
+                strategyName = value;
+                break;
+            case "-games":
+                games = Integer.parseInt(value);
+                break;
+            case "-seed":
+                seed = Long.parseLong(value);
+                break;
+            case "-threads":
+                threads = Integer.parseInt(value);
+                break;
+            case "-cache":
+                cacheSize = Integer.parseInt(value);
+                break;
+            case "-book":
+                bookFile = value;
+                break;
+            case "-matrix":
+                matrixBudget = Long.parseLong(value) << 20;
+                break;
+            case "-spill":
+                spillDirectory = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option "
+                        + args[i]);
+            }
+        }
+
+        GameSpec spec = new GameSpec(colors, slots, maxMoves);
+        RatingMatrix.configure(matrixBudget, spillDirectory == null ? null
+                : Paths.get(spillDirectory));
+        StrategyType strategy = StrategyType.byName(strategyName);
+        if (strategy == null) {
+            throw new IllegalArgumentException("Unknown strategy "
+                    + strategyName);
+        }
+        int[] secrets;
+        if (games == 0 && spec.getCodeCount() <= EXHAUSTIVE_LIMIT) {
+            secrets = new int[spec.getCodeCount()];
+            for (int i = 0; i < secrets.length; i++) {
+                secrets[i] = i;
+            }
+        } else {
+            secrets = randomSecrets(spec, games == 0 ? DEFAULT_GAMES : games,
+                    seed);
+        }
+        Simulator simulator = new Simulator(spec, strategy, secrets, threads,
+                cacheSize == 0 ? null : new GuessCache(cacheSize));
+        if (bookFile != null) {
+            simulator.setOpeningBook(OpeningBook.open(Paths.get(bookFile)));
+        }
+        simulator.run();
+    }
+
+    /**
+     * Draws secrets uniformly at random.
+     *
+     * @param spec
+     *            dimensions of the games
+     * @param games
+     *            number of secrets
+     * @param seed
+     *            seed of the random number generator
+     * @return indices of the secrets
+     */
+    public static int[] randomSecrets(GameSpec spec, int games, long seed) {
+        Random random = new Random(seed);
+        int[] secrets = new int[games];
+        for (int i = 0; i < games; i++) {
+            secrets[i] = random.nextInt(spec.getCodeCount());
+        }
+        return secrets;
+    }
+
+    /**
+     * Plays all games and prints the statistics to {@code System.out}.
+     */
+    public void run() {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicInteger next = new AtomicInteger();
+        Result total = new Result(spec.getMaxMoves());
+        long start = System.nanoTime();
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    Result result = new Result(spec.getMaxMoves());
+                    GuessStrategy guesser = cache == null ? strategy.create()
+                            : cache.wrap(strategy.create());
+                    for (int i = next.getAndIncrement(); i < secrets.length;
+                            i = next.getAndIncrement()) {
+                        play(secrets[i], guesser, result);
+                    }
+                    return result;
+                }));
+            }
+            for (Future<Result> future : futures) {
+                total.merge(future.get());
+            }
+        } catch (Exception ex) {
+            throw new IllegalStateException("Simulation failed.", ex);
+        } finally {
+            executor.shutdown();
+        }
+        print(total, System.nanoTime() - start);
+    }
+
+    private void play(int secretIndex, GuessStrategy guesser, Result result) {
+        ColorCode secret = ColorCode.of(spec, secretIndex);
+        Game game = new Game(spec, true, guesser);
+        try {
+            game.setOpeningBook(book);
+            long start = System.nanoTime();
+            ColorCode guess = game.machineMove();
+            result.addLatency(System.nanoTime() - start);
+            while (true) {
+                Rating rating = secret.evaluate(guess);
+                if (rating.isAllBlack()) {
+                    result.histogram[game.getMoveCount()]++;
+                    return;
+                } else if (game.getMoveCount() == spec.getMaxMoves()) {
+                    result.failures++;
+                    return;
+                }
+                start = System.nanoTime();
+                game.processEval(guess, rating);
+                guess = game.machineMove();
+                result.addLatency(System.nanoTime() - start);
+                if (guess == null) {
+                    throw new IllegalStateException("No candidate left for "
+                            + secret);
+                }
+            }
+        } finally {
+            // Large code spaces keep their candidates off the heap
+            game.dispose();
+        }
+    }
+
+    private void print(Result result, long nanos) {
+        long solved = 0;
+        long moveSum = 0;
+        int maxMoves = 0;
+        for (int i = 0; i < result.histogram.length; i++) {
+            solved += result.histogram[i];
+            moveSum += i * result.histogram[i];
+            if (result.histogram[i] > 0) {
+                maxMoves = i;
+            }
+        }
+        long[] latencies = Arrays.copyOf(result.latencies, result.moves);
+        Arrays.sort(latencies);
+
+        System.out.println("Spec:      " + spec);
+        System.out.println("Strategy:  " + strategy + ", " + threads
+                + " threads");
+        System.out.printf("Games:     %d in %.3f s (%.1f games/s)%n",
+                secrets.length, nanos / 1e9, secrets.length / (nanos / 1e9));
+        System.out.printf("Moves:     mean %.4f, max %d (solved games)%n",
+                solved == 0 ? 0.0 : (double) moveSum / solved, maxMoves);
+        System.out.println("Failures:  " + result.failures
+                + " (not solved within " + spec.getMaxMoves() + " moves)");
+        System.out.println("Histogram:");
+        for (int i = 1; i < result.histogram.length; i++) {
+            System.out.printf("  %3d moves: %d%n", i, result.histogram[i]);
+        }
+        System.out.printf("Latency:   p50 %.3f ms, p99 %.3f ms per move%n",
+                percentile(latencies, 0.5) / 1e6,
+                percentile(latencies, 0.99) / 1e6);
+        if (cache != null) {
+            System.out.println("Cache:     " + cache);
+        }
+        if (book != null) {
+            System.out.println("Book:      " + book);
+        }
+        RatingMatrix matrix = RatingMatrix.forSpec(spec);
+        if (matrix != null) {
+            System.out.println("Ratings:   " + matrix);
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int i = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+    }
+}